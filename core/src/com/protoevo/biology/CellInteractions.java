@@ -0,0 +1,228 @@
+package com.protoevo.biology;
+
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.nodes.AdhesionReceptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the effects that cells have on <i>other</i> cells while cell updates run in parallel,
+ * and applies them afterwards in a single-threaded resolve phase.
+ * <br>
+ * A cell may freely change its own state during its update, but anything it does to another
+ * cell is posted here as an intent. Intents whose effect depends on the other cell's state, such
+ * as eating or exchanging resources, only carry a rate: the amounts are computed when the intent
+ * is applied, from state that no other thread is changing. Each worker thread appends to its own buffer, so posting
+ * needs no locks. When resolving, intents are ordered by the id of the cell that posted them
+ * (a cell's own intents keep the order they were posted in), so the outcome does not depend
+ * on how the cells were distributed across threads.
+ * <br>
+ * Outside of the collecting phase intents are applied immediately. Buffers belonging to
+ * threads that have since terminated are dropped after each resolve.
+ */
+public class CellInteractions {
+
+    public enum Type {
+        REMOVE_MASS, DAMAGE, DEPLETE_MOLECULE,
+        TRANSFER_CONSTRUCTION_MASS, TRANSFER_ENERGY, TRANSFER_MOLECULE,
+        MATE, ENGULF, MOVE_ENGULFED, EAT, EXCHANGE_RESOURCES
+    }
+
+    private static final class Intent {
+        private Type type;
+        private Cell source, target, recipient;
+        private float amount;
+        private ComplexMolecule molecule;
+        private CauseOfDeath cause;
+        private AdhesionReceptor receptor;
+
+        private long getSourceId() {
+            return source.getId();
+        }
+
+        private void clear() {
+            source = target = recipient = null;
+            molecule = null;
+            cause = null;
+            receptor = null;
+        }
+    }
+
+    private static final class Buffer {
+        private final Thread owner = Thread.currentThread();
+        private final List<Intent> intents = new ArrayList<>();
+        private int size = 0;
+
+        private Intent next() {
+            if (size == intents.size())
+                intents.add(new Intent());
+            return intents.get(size++);
+        }
+    }
+
+    private static final Comparator<Intent> resolutionOrder = Comparator.comparingLong(Intent::getSourceId);
+
+    private final Collection<Buffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer> threadBuffer = ThreadLocal.withInitial(this::createBuffer);
+    private final List<Intent> toResolve = new ArrayList<>();
+    private volatile boolean collecting = false;
+
+    private Buffer createBuffer() {
+        Buffer buffer = new Buffer();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    public void beginCollecting() {
+        collecting = true;
+    }
+
+    public boolean isCollecting() {
+        return collecting;
+    }
+
+    public void resolve() {
+        collecting = false;
+
+        for (Buffer buffer : buffers)
+            for (int i = 0; i < buffer.size; i++)
+                toResolve.add(buffer.intents.get(i));
+
+        toResolve.sort(resolutionOrder);
+        for (Intent intent : toResolve)
+            apply(intent);
+        toResolve.clear();
+
+        for (Buffer buffer : buffers) {
+            for (int i = 0; i < buffer.size; i++)
+                buffer.intents.get(i).clear();
+            buffer.size = 0;
+        }
+        // Workers retired by their pool, or by the tick scheduler being rebuilt, will never post again
+        buffers.removeIf(buffer -> !buffer.owner.isAlive());
+    }
+
+    private void post(Type type, Cell source, Cell target, Cell recipient,
+                      float amount, ComplexMolecule molecule, CauseOfDeath cause) {
+        submit(prepare(type, source, target, recipient, amount, molecule, cause));
+    }
+
+    private Intent prepare(Type type, Cell source, Cell target, Cell recipient,
+                           float amount, ComplexMolecule molecule, CauseOfDeath cause) {
+        Intent intent = collecting ? threadBuffer.get().next() : new Intent();
+        intent.type = type;
+        intent.source = source;
+        intent.target = target;
+        intent.recipient = recipient;
+        intent.amount = amount;
+        intent.molecule = molecule;
+        intent.cause = cause;
+        return intent;
+    }
+
+    private void submit(Intent intent) {
+        if (!collecting)
+            apply(intent);
+    }
+
+    private static void apply(Intent intent) {
+        Cell target = intent.target;
+        switch (intent.type) {
+            case REMOVE_MASS:
+                target.removeMass(intent.amount, intent.cause);
+                break;
+            case DAMAGE:
+                target.damage(intent.amount, intent.cause);
+                break;
+            case DEPLETE_MOLECULE:
+                target.depleteComplexMolecule(intent.molecule, intent.amount);
+                break;
+            case TRANSFER_CONSTRUCTION_MASS:
+                intent.recipient.addConstructionMass(intent.amount);
+                target.depleteConstructionMass(intent.amount);
+                break;
+            case TRANSFER_ENERGY:
+                intent.recipient.addAvailableEnergy(intent.amount);
+                target.depleteEnergy(intent.amount);
+                break;
+            case TRANSFER_MOLECULE:
+                intent.recipient.addAvailableComplexMolecule(intent.molecule, intent.amount);
+                target.depleteComplexMolecule(intent.molecule, intent.amount);
+                break;
+            case MATE:
+                ((Protozoan) target).acceptMate((Protozoan) intent.source);
+                break;
+            case ENGULF:
+                ((Protozoan) intent.source).acceptEngulfed(target);
+                break;
+            case MOVE_ENGULFED:
+                ((Protozoan) intent.source).moveEngulfed(target, intent.amount);
+                break;
+            case EAT:
+                intent.source.extractFrom(target, intent.amount);
+                break;
+            case EXCHANGE_RESOURCES:
+                intent.receptor.exchangeResources(target, intent.amount);
+                break;
+        }
+    }
+
+    public void removeMass(Cell source, Cell target, float mass, CauseOfDeath cause) {
+        post(Type.REMOVE_MASS, source, target, null, mass, null, cause);
+    }
+
+    public void damage(Cell source, Cell target, float damage, CauseOfDeath cause) {
+        post(Type.DAMAGE, source, target, null, damage, null, cause);
+    }
+
+    public void depleteComplexMolecule(Cell source, Cell target, ComplexMolecule molecule, float amount) {
+        post(Type.DEPLETE_MOLECULE, source, target, null, amount, molecule, null);
+    }
+
+    public void transferConstructionMass(Cell source, Cell from, Cell to, float mass) {
+        post(Type.TRANSFER_CONSTRUCTION_MASS, source, from, to, mass, null, null);
+    }
+
+    public void transferEnergy(Cell source, Cell from, Cell to, float energy) {
+        post(Type.TRANSFER_ENERGY, source, from, to, energy, null, null);
+    }
+
+    public void transferComplexMolecule(Cell source, Cell from, Cell to, ComplexMolecule molecule, float amount) {
+        post(Type.TRANSFER_MOLECULE, source, from, to, amount, molecule, null);
+    }
+
+    public void mate(Protozoan source, Protozoan other) {
+        post(Type.MATE, source, other, null, 0, null, null);
+    }
+
+    public void engulf(Protozoan source, Cell target) {
+        post(Type.ENGULF, source, target, null, 0, null, null);
+    }
+
+    public void moveEngulfed(Protozoan source, Cell engulfed, float delta) {
+        post(Type.MOVE_ENGULFED, source, engulfed, null, delta, null, null);
+    }
+
+    /**
+     * @param extraction the fraction of the engulfed cell's resources to extract, the amounts
+     *                   themselves are computed from the engulfed cell's state when resolved
+     */
+    public void eat(Cell source, Cell engulfed, float extraction) {
+        post(Type.EAT, source, engulfed, null, extraction, null, null);
+    }
+
+    /**
+     * @param delta the time over which resources flow through the binding, the amounts
+     *              themselves are computed from both cells' state when resolved
+     */
+    public void exchangeResources(AdhesionReceptor receptor, Cell source, Cell other, float delta) {
+        Intent intent = prepare(Type.EXCHANGE_RESOURCES, source, other, null, delta, null, null);
+        intent.receptor = receptor;
+        submit(intent);
+    }
+}
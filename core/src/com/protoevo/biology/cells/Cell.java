@@ -29,6 +29,7 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 
 	private Particle particle;
 	private Environment environment;
+	private static final CellInteractions immediateInteractions = new CellInteractions();
 	private final Colour healthyColour = new Colour(Color.WHITE);
 	private final Colour fullyDegradedColour = new Colour(Color.WHITE);
 	private final Colour currentColour = new Colour();
@@ -60,6 +61,47 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 	private Cell engulfer = null;
 	private boolean fullyEngulfed = false;
 	private float joiningCheckCounter = 0f;
+	private transient int chunkIndex = -1, chunkSlot = -1;
+	private transient boolean hasEnvironmentSample = false;
+	private transient float sampledLight, sampledTemperature;
+	private transient float deferredDelta = 0, healthAfterUpdate = Float.NaN;
+	private transient int deferredTicks = 0;
+
+	/**
+	 * Updates the cell, unless it is quiescent in which case it is only updated every
+	 * few ticks with the time accumulated since its last update.
+	 */
+	public void scheduledUpdate(float delta) {
+		deferredDelta += delta;
+		int interval = Environment.settings.misc.quiescentCellUpdateInterval.get();
+		if (interval <= 1 || ++deferredTicks >= interval || !isQuiescent()) {
+			float accumulatedDelta = deferredDelta;
+			deferredDelta = 0;
+			deferredTicks = 0;
+			update(accumulatedDelta);
+			healthAfterUpdate = health;
+		}
+		hasEnvironmentSample = false;
+	}
+
+	/**
+	 * @return whether nothing is happening to the cell that needs it to be updated every tick
+	 */
+	public boolean isQuiescent() {
+		return false;
+	}
+
+	/**
+	 * A cell is resting if it has settled, is not touching or being engulfed by anything,
+	 * and has not been damaged by anything else since its last update.
+	 */
+	protected boolean isResting() {
+		return !particle.isDead()
+				&& !isEngulfed()
+				&& health >= healthAfterUpdate
+				&& particle.getSpeed() < particle.getRadius() / 50f
+				&& particle.getContacts().isEmpty();
+	}
 
 	public void update(float delta) {
 		if (particle.isDead()) {
@@ -173,9 +215,22 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 	public float getExternalTemperature() {
 		if (environment == null)
 			return 0f;
+		if (hasEnvironmentSample)
+			return sampledTemperature;
 		return environment.getTemperature(particle.getPos());
 	}
 
+	/**
+	 * Sets the light and temperature at the cell, sampled by the environment at the
+	 * start of the cell updates phase. The sample is only used until the cell's
+	 * scheduled update finishes, after which the environment is queried directly.
+	 */
+	public void setEnvironmentSample(float light, float temperature) {
+		sampledLight = light;
+		sampledTemperature = temperature;
+		hasEnvironmentSample = true;
+	}
+
 	public float getInternalTemperature() {
 		return temperature;
 	}
@@ -235,11 +290,19 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 		return Optional.ofNullable(environment);
 	}
 
+	public CellInteractions getInteractions() {
+		if (environment == null || environment.getCellInteractions() == null)
+			return immediateInteractions;
+		return environment.getCellInteractions();
+	}
+
 	public float getLightAt(Vector2 pos) {
 		return getEnv().map(env -> env.getLight(pos)).orElse(0f);
 	}
 
 	public float getLightAtCell() {
+		if (hasEnvironmentSample && environment != null)
+			return sampledLight;
 		return getLightAt(getPos());
 	}
 
@@ -268,6 +331,25 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 		return particle.getId();
 	}
 
+	/**
+	 * @return the index of the chunk this cell is currently allocated to, maintained by {@link com.protoevo.env.Chunks}
+	 */
+	public int getChunkIndex() {
+		return chunkIndex;
+	}
+
+	public void setChunkIndex(int chunkIndex) {
+		this.chunkIndex = chunkIndex;
+	}
+
+	public int getChunkSlot() {
+		return chunkSlot;
+	}
+
+	public void setChunkSlot(int chunkSlot) {
+		this.chunkSlot = chunkSlot;
+	}
+
 	public Particle getParticle() {
 		return particle;
 	}
@@ -332,6 +414,15 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 	}
 
 	public void eat(Cell engulfed, float extraction) {
+		getInteractions().eat(this, engulfed, extraction);
+	}
+
+	/**
+	 * Moves the given fraction of the engulfed cell's mass, energy and molecules into this cell's
+	 * food. The amounts depend on the engulfed cell's state, so this is applied by
+	 * {@link CellInteractions} rather than called during the cell update.
+	 */
+	public void extractFrom(Cell engulfed, float extraction) {
 
 		if (getTotalFoodMassToDigest() >= getFoodToDigestMassCap())
 			return;
@@ -339,7 +430,8 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 		Food.Type foodType = engulfed instanceof PlantCell ? Food.Type.Plant : Food.Type.Meat;
 		float extractedMass = engulfed.getMass() * extraction;
 		float removeMultiplier = Environment.settings.cell.engulfExtractionWasteMultiplier.get();
-		engulfed.removeMass(removeMultiplier * extractedMass, CauseOfDeath.EATEN);
+		CellInteractions interactions = getInteractions();
+		interactions.removeMass(this, engulfed, removeMultiplier * extractedMass, CauseOfDeath.EATEN);
 
 		Food food;
 		if (foodToDigest.containsKey(foodType))
@@ -355,7 +447,7 @@ public abstract class Cell implements Serializable, Coloured, Spawnable {
 		for (ComplexMolecule molecule : engulfed.getComplexMolecules()) {
 			if (engulfed.getComplexMoleculeAvailable(molecule) > 0) {
 				float extractedAmount = extraction * engulfed.getComplexMoleculeAvailable(molecule);
-				engulfed.depleteComplexMolecule(molecule, extractedAmount);
+				interactions.depleteComplexMolecule(this, engulfed, molecule, extractedAmount);
 				if (extractedAmount <= 1e-12)
 					continue;
 				food.addComplexMoleculeMass(molecule, extractedMass);
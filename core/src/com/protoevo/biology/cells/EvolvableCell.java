@@ -5,6 +5,8 @@ import com.protoevo.biology.nn.Neuron;
 import com.protoevo.env.Environment;
 import com.protoevo.maths.Functions;
 
+import java.util.Optional;
+
 public abstract class EvolvableCell extends Cell implements Evolvable {
 
     private GeneExpressionFunction geneExpressionFunction;
@@ -129,15 +131,33 @@ public abstract class EvolvableCell extends Cell implements Evolvable {
         timeSinceLastGeneExpression += delta;
         if (geneExpressionFunction != null
                 && timeSinceLastGeneExpression >= getExpressionInterval()) {
-            geneExpressionFunction.update();
             timeSinceLastGeneExpression = 0;
-
-            for (Neuron n : geneExpressionFunction.getRegulatoryNetwork().getNeurons()) {
-                if (n.getType().equals(Neuron.Type.HIDDEN))
-                    addActivity(Environment.settings.cell.grnHiddenNodeActivity.get() * n.getLastState());
+            Optional<Environment> env = getEnv();
+            if (env.isPresent() && Environment.settings.misc.batchGeneExpression.get()) {
+                geneExpressionFunction.prepareExpression();
+                env.get().requestGeneExpression(this);
+            } else {
+                geneExpressionFunction.update();
+                onGeneExpressed();
             }
         }
     }
 
+    /**
+     * Finishes a gene expression update requested from {@link #update(float)} after the
+     * environment has ticked this cell's regulatory network with the rest of its batch.
+     */
+    public void completeGeneExpression() {
+        geneExpressionFunction.completeExpression();
+        onGeneExpressed();
+    }
+
+    private void onGeneExpressed() {
+        for (Neuron n : geneExpressionFunction.getRegulatoryNetwork().getNeurons()) {
+            if (n.getType().equals(Neuron.Type.HIDDEN))
+                addActivity(Environment.settings.cell.grnHiddenNodeActivity.get() * n.getLastState());
+        }
+    }
+
     public abstract float getExpressionInterval();
 }
@@ -35,6 +35,11 @@ public class MeatCell extends Cell {
         super.update(delta);
     }
 
+    @Override
+    public boolean isQuiescent() {
+        return isResting();
+    }
+
     @Override
     public float getMinRadius() {
         return super.getMinRadius() / 5f;
@@ -146,6 +146,11 @@ public class PlantCell extends EvolvableCell {
         }
     }
 
+    @Override
+    public boolean isQuiescent() {
+        return isResting();
+    }
+
     @Override
     public float getExpressionInterval() {
         return Environment.settings.plant.geneExpressionInterval.get();
@@ -9,6 +9,7 @@ import com.protoevo.biology.organelles.Organelle;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.ChemicalSolution;
 import com.protoevo.env.Environment;
+import com.protoevo.env.RayCaster;
 import com.protoevo.maths.Functions;
 import com.protoevo.physics.Collision;
 import com.protoevo.utils.Colour;
@@ -38,6 +39,7 @@ public class Protozoan extends EvolvableCell
 	private float thrustTurn = 0, thrustMag;
 	private final SpawnChildFn createChild = new SpawnChildFn(this);
 	private final SpawnMeatCell createMeatOnDeath = new SpawnMeatCell(this);
+	private transient RayCaster rayCaster;
 
 	public static class LineageTag implements Serializable, Comparable<LineageTag> {
 		public static final long serialVersionUID = 1L;
@@ -80,8 +82,9 @@ public class Protozoan extends EvolvableCell
 			}
 		}
 
+		CellInteractions interactions = getInteractions();
 		for (Cell engulfedCell : engulfedCells) {
-			handleEngulfing(engulfedCell, delta);
+			interactions.moveEngulfed(this, engulfedCell, delta);
 			eat(engulfedCell, Environment.settings.protozoa.engulfEatingRateMultiplier.get() * delta);
 		}
 		engulfedCells.removeIf(this::removeEngulfedCondition);
@@ -116,8 +119,12 @@ public class Protozoan extends EvolvableCell
 
 	public void setMate(Protozoan other) {
 		crossOverGenome = other.getGeneExpressionFunction();
-		other.crossOverGenome = getGeneExpressionFunction();
-		other.matingCooldown = 1;
+		getInteractions().mate(this, other);
+	}
+
+	public void acceptMate(Protozoan mate) {
+		crossOverGenome = mate.getGeneExpressionFunction();
+		matingCooldown = 1;
 	}
 
 	private boolean removeEngulfedCondition(Cell c) {
@@ -194,12 +201,11 @@ public class Protozoan extends EvolvableCell
 		if (solution == null)
 			return 0;
 
+		// difference in plant density between just ahead of and just behind the cell
+		float dist = 1.1f * getRadius();
 		Vector2 pos = getPos();
-		tmp.set(pos).add(dir.setLength(1.1f * getRadius()));
-		float plantGradientAhead = solution.getPlantDensity(tmp);
-		tmp.set(pos).sub(dir.setLength(1.1f * getRadius()));
-		float plantGradientBehind = solution.getPlantDensity(tmp);
-		return plantGradientAhead - plantGradientBehind;
+		solution.getPlantGradient(pos.x, pos.y, dist, tmp);
+		return 2 * dist * tmp.dot(dir.nor());
 	}
 
 	@ControlVariable(name="Cilia Thrust", min=0, max=1)
@@ -328,7 +334,11 @@ public class Protozoan extends EvolvableCell
 		return mass;
 	}
 
-	private void handleEngulfing(Cell e, float delta) {
+	/**
+	 * Pulls an engulfed cell towards the centre of this cell, keeping it apart from the other
+	 * engulfed cells. This moves other cells, so it is applied by {@link CellInteractions}.
+	 */
+	public void moveEngulfed(Cell e, float delta) {
 		// Move engulfed cell towards the centre of this cell
 		Vector2 vel = tmp.set(getPos()).sub(e.getPos());
 		float d2 = vel.len2();
@@ -377,6 +387,18 @@ public class Protozoan extends EvolvableCell
 	}
 
 
+	/**
+	 * Takes the cell into this cell, unless something else engulfed it first.
+	 * Applied by {@link CellInteractions}.
+	 */
+	public void acceptEngulfed(Cell cell) {
+		if (cell.isEngulfed() || engulfedCells.contains(cell))
+			return;
+		cell.setEngulfer(this);
+		cell.kill(CauseOfDeath.EATEN);
+		engulfedCells.add(cell);
+	}
+
 	@Override
 	public String getPrettyName() {
 		return "Protozoan";
@@ -393,6 +415,15 @@ public class Protozoan extends EvolvableCell
 		return getNumOfAttachments(Spike.class);
 	}
 
+	/**
+	 * @return the ray caster shared by this cell's photoreceptors
+	 */
+	public RayCaster getRayCaster() {
+		if (rayCaster == null)
+			rayCaster = new RayCaster();
+		return rayCaster;
+	}
+
 	public int getNumLightSensitiveNodes() {
 		return getNumOfAttachments(Photoreceptor.class);
 	}
@@ -93,20 +93,23 @@ public interface Evolvable extends Serializable {
     }
 
     static void setTraitValue(Evolvable e, Method setter, Object value) {
+        setTraitValue(e, TraitBindings.setter(setter), value);
+    }
+
+    static void setTraitValue(Evolvable e, TraitBindings.Setter setter, Object value) {
         try {
-            setter.invoke(e, value);
+            setter.set(e, value);
         }
-        catch (IllegalArgumentException | IllegalAccessException
-               | InvocationTargetException | NullPointerException ex) {
+        catch (TraitBindings.ValueConversionException ex) {
             throw new RuntimeException(
                     "Could not map value " + value + " to the trait. Check the signature of "
-                    + setter.getName() + " on " + e + ": " + ex
+                    + setter.getMethod().getName() + " on " + e + ": " + ex
             );
         }
-        catch (ClassCastException ex) {
+        catch (RuntimeException ex) {
             throw new RuntimeException(
-                    "Could not cast value " + value + " to the trait. Check the signature of "
-                    + setter.getName() + " on " + e + ": " + ex
+                    "Failed to set trait with " + setter.getMethod().getName()
+                    + " on " + e + " to " + value, ex
             );
         }
     }
@@ -34,7 +34,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     public static class RegulationNode extends Node implements Serializable {
         public static final long serialVersionUID = 1L;
         public String name;
-        private transient Function<Evolvable, Float> regulatorGetter;
+        private transient TraitBindings.FloatGetter regulatorGetter;
         private String methodGetterName;
         private String targetID;
         private Object lastTarget;
@@ -49,19 +49,11 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             this.lastTarget = null;
         }
 
-        private Function<Evolvable, Float> createGetter(Method method) {
-            String regulatorName = method.getAnnotation(GeneRegulator.class).name();
+        private TraitBindings.FloatGetter createGetter(Method method) {
             float max = method.getAnnotation(GeneRegulator.class).max();
             float min = method.getAnnotation(GeneRegulator.class).min();
-            return evolvable -> {
-                try {
-                    return 2f * ((Float) method.invoke(evolvable) - min) / (max - min) - 1f;
-                } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
-                    throw new RuntimeException(
-                        "Failed to get value for gene regulator "
-                        + regulatorName + "(" + method.getName() + ":" + method.getDeclaringClass() + ")", e);
-                }
-            };
+            TraitBindings.FloatGetter getter = TraitBindings.getter(method);
+            return target -> 2f * (getter.get(target) - min) / (max - min) - 1f;
         }
 
         public RegulationNode(String name, Method getterMethod) {
@@ -73,7 +65,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         public RegulationNode(String name, Function<Evolvable, Float> regulatorGetter,
                               String targetID, String methodGetterName) {
             this.name = name;
-            this.regulatorGetter = regulatorGetter;
+            this.regulatorGetter = target -> regulatorGetter.apply((Evolvable) target);
             this.methodGetterName = methodGetterName;
             this.targetID = targetID;
         }
@@ -85,17 +77,13 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         public float getValue(Evolvable evolvable) {
             lastTarget = evolvable;
             if (regulatorGetter == null) {
-                for (Method method : evolvable.getClass().getMethods())
-                    if (method.getName().equals(methodGetterName)) {
-                        regulatorGetter = createGetter(method);
-                        break;
-                    }
-
-                if (regulatorGetter == null)
+                Method method = TraitBindings.findMethod(evolvable.getClass(), methodGetterName);
+                if (method == null)
                     throw new RuntimeException(
                         "Failed to find method " + methodGetterName + " in " + evolvable.getClass());
+                regulatorGetter = createGetter(method);
             }
-            return regulatorGetter.apply(evolvable);
+            return regulatorGetter.get(evolvable);
         }
 
         @Override
@@ -104,7 +92,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         }
 
         public Function<Evolvable, Float> getGetter() {
-            return regulatorGetter;
+            return regulatorGetter == null ? null : regulatorGetter::get;
         }
 
         public RegulationNode copy() {
@@ -126,6 +114,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         private String name;
         private Trait<?> trait;
         private transient Method traitSetter;
+        private transient TraitBindings.Setter boundSetter;
         private final String methodName;
         private final Map<String, Object> dependencies;
         private String[] dependents;
@@ -168,6 +157,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             this.name = other.name;
             this.trait = other.trait.copy();
             this.traitSetter = other.traitSetter;
+            this.boundSetter = other.boundSetter;
             this.methodName = other.methodName;
             this.dependencies = new HashMap<>();
             for (String str : other.dependencies.keySet())
@@ -221,14 +211,25 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         }
 
         public void setTraitValue(Evolvable target, Object traitValue) {
-            Method setter = getTraitSetter(target);
-            if (!traitValue.equals(lastTraitValue) && setter != null) {
+            if (traitValue.equals(lastTraitValue))
+                return;
+            TraitBindings.Setter setter = getBoundSetter(target);
+            if (setter != null) {
                 Evolvable.setTraitValue(target, setter, traitValue);
                 lastTraitValue = traitValue;
                 lastTarget = target;
             }
         }
 
+        private TraitBindings.Setter getBoundSetter(Object target) {
+            if (boundSetter == null) {
+                Method method = getTraitSetter(target);
+                if (method != null)
+                    boundSetter = TraitBindings.setter(method);
+            }
+            return boundSetter;
+        }
+
         @Override
         public Object getLastTarget() {
             return lastTarget;
@@ -264,14 +265,8 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
             // this is to handle transient method field.
             // if the node was serialized and rebuilt, the method field will be null.
-            for (Method method : target.getClass().getMethods()) {
-                if (method.getName().equals(methodName)) {
-                    traitSetter = method;
-                    return method;
-                }
-            }
-
-            return null;
+            traitSetter = TraitBindings.findMethod(target.getClass(), methodName);
+            return traitSetter;
         }
 
         public void prependName(String name) {
@@ -286,6 +281,80 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     private Regulators regulators;
     private Collection<String> regulatedTraits = new ArrayList<>();
     private final Map<String, Evolvable> targetMap = new HashMap<>();
+    private transient GRNSlots grnSlots;
+
+    /**
+     * The GRN input and output slots of every trait and regulator, resolved once so that
+     * the per-tick expression update is a loop over arrays rather than label lookups.
+     * Rebuilt whenever the network, genes, regulators or targets change.
+     */
+    private static final class GRNSlots {
+        private final NeuralNetwork network;
+        private final Map<String, Integer> traitIndices = new HashMap<>();
+        private final ExpressionNode[] traitNodes;
+        private final Evolvable[] traitTargets;
+        private final int[] traitInputSlots, traitOutputSlots;
+        private final RegulationNode[] regulatorNodes;
+        private final Evolvable[] regulatorTargets;
+        private final int[] regulatorSlots;
+        private final int biasSlot, randomSourceSlot;
+
+        private GRNSlots(GeneExpressionFunction fn) {
+            network = fn.geneRegulatoryNetwork;
+            int nTraits = fn.expressionNodes.size();
+            traitNodes = new ExpressionNode[nTraits];
+            traitTargets = new Evolvable[nTraits];
+            traitInputSlots = new int[nTraits];
+            traitOutputSlots = new int[nTraits];
+            int i = 0;
+            for (Map.Entry<String, ExpressionNode> entry : fn.expressionNodes.entrySet()) {
+                String geneName = entry.getKey();
+                ExpressionNode node = entry.getValue();
+                traitIndices.put(geneName, i);
+                traitNodes[i] = node;
+                traitTargets[i] = fn.targetMap.get(node.getTargetID());
+                traitInputSlots[i] = slot(GRNFactory.getInputName(geneName));
+                traitOutputSlots[i] = slot(GRNFactory.getOutputName(geneName));
+                i++;
+            }
+
+            List<RegulationNode> boundRegulators = new ArrayList<>();
+            List<Evolvable> boundTargets = new ArrayList<>();
+            List<Integer> boundSlots = new ArrayList<>();
+            for (Map.Entry<String, RegulationNode> entry : fn.regulators.entrySet()) {
+                Evolvable target = fn.targetMap.get(entry.getValue().targetID);
+                int slot = slot(entry.getKey());
+                if (target == null || slot < 0)
+                    continue;
+                boundRegulators.add(entry.getValue());
+                boundTargets.add(target);
+                boundSlots.add(slot);
+            }
+            regulatorNodes = boundRegulators.toArray(new RegulationNode[0]);
+            regulatorTargets = boundTargets.toArray(new Evolvable[0]);
+            regulatorSlots = boundSlots.stream().mapToInt(Integer::intValue).toArray();
+
+            biasSlot = slot("Bias");
+            randomSourceSlot = slot("Random Source");
+        }
+
+        private int slot(String label) {
+            return network == null ? -1 : network.getSlot(label);
+        }
+    }
+
+    private GRNSlots getGRNSlots() {
+        GRNSlots slots = grnSlots;
+        if (slots == null || slots.network != geneRegulatoryNetwork) {
+            slots = new GRNSlots(this);
+            grnSlots = slots;
+        }
+        return slots;
+    }
+
+    private void invalidateGRNSlots() {
+        grnSlots = null;
+    }
 
 
     public GeneExpressionFunction() {
@@ -329,43 +398,44 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     }
 
     private void setGRNInputs() {
-        geneRegulatoryNetwork.setInput("Bias", 1f);
-        geneRegulatoryNetwork.setInput("Random Source", MathUtils.random(-1f, 1f));
-        for (String geneName : getTraitNames()) {
-            String inputName = GRNFactory.getInputName(geneName);
-            if (geneRegulatoryNetwork.hasSensor(inputName)) {
-                if (notDisabled(geneName)) {
-                    Object geneValue = getGeneValue(geneName);
-                    float value;
-                    if (geneValue instanceof Float)
-                        value = (float) geneValue;
-                    else if (geneValue instanceof Integer)
-                        value = (int) geneValue;
-                    else if (geneValue instanceof Boolean)
-                        value = ((boolean) geneValue) ? 1f : -1f;
-                    else
-                        throw new RuntimeException("Could not cast gene " + geneName + " value to float.");
-
-                    geneRegulatoryNetwork.setInput(inputName, value);
-                } else {
-                    geneRegulatoryNetwork.setInput(inputName, 0);
-                }
+        GRNSlots slots = getGRNSlots();
+        NeuralNetwork grn = geneRegulatoryNetwork;
+        if (slots.biasSlot >= 0)
+            grn.setInput(slots.biasSlot, 1f);
+        float randomSource = MathUtils.random(-1f, 1f);
+        if (slots.randomSourceSlot >= 0)
+            grn.setInput(slots.randomSourceSlot, randomSource);
+
+        for (int i = 0; i < slots.traitNodes.length; i++) {
+            int slot = slots.traitInputSlots[i];
+            if (slot < 0)
+                continue;
+            ExpressionNode node = slots.traitNodes[i];
+            if (notDisabled(node)) {
+                Object geneValue = getGeneValue(node);
+                float value;
+                if (geneValue instanceof Float)
+                    value = (float) geneValue;
+                else if (geneValue instanceof Integer)
+                    value = (int) geneValue;
+                else if (geneValue instanceof Boolean)
+                    value = ((boolean) geneValue) ? 1f : -1f;
+                else
+                    throw new RuntimeException("Could not cast gene " + node.getName() + " value to float.");
+
+                grn.setInput(slot, value);
+            } else {
+                grn.setInput(slot, 0);
             }
         }
 
-        for (String regulatorName : regulators.keySet()) {
-            RegulationNode node = regulators.get(regulatorName);
-            if (!targetMap.containsKey(node.targetID))
-                continue;
-
-            Evolvable target = targetMap.get(node.targetID);
-            if (geneRegulatoryNetwork.hasSensor(regulatorName))
-                geneRegulatoryNetwork.setInput(regulatorName, node.getValue(target));
-        }
+        for (int i = 0; i < slots.regulatorNodes.length; i++)
+            grn.setInput(slots.regulatorSlots[i], slots.regulatorNodes[i].getValue(slots.regulatorTargets[i]));
     }
 
     public void setGeneRegulators(Regulators regulators) {
         this.regulators = regulators;
+        invalidateGRNSlots();
     }
 
     public void registerTargetEvolvable(String id, Evolvable evolvable) {
@@ -386,6 +456,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             if (node.targetID == null)
                 node.targetID = id;
         }
+        invalidateGRNSlots();
     }
 
     public void tick() {
@@ -398,10 +469,33 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
     public void update() {
         tick();
-        for (String trait : getTraitNames()) {
-            ExpressionNode node = expressionNodes.get(trait);
-            if (node.mapsToTrait() && targetMap.containsKey(node.getTargetID()))
-                node.setTraitValue(targetMap.get(node.getTargetID()), getTraitValue(trait));
+        applyTraitValues();
+    }
+
+    /**
+     * First half of an update whose network tick is run elsewhere, e.g. by a
+     * {@link com.protoevo.biology.nn.NetworkBatchEvaluator} alongside other cells' networks.
+     */
+    public void prepareExpression() {
+        if (geneRegulatoryNetwork != null)
+            setGRNInputs();
+    }
+
+    /**
+     * Second half of an update, to be called once the network has been ticked.
+     */
+    public void completeExpression() {
+        if (geneRegulatoryNetwork != null)
+            setGRNInputs();
+        applyTraitValues();
+    }
+
+    private void applyTraitValues() {
+        GRNSlots slots = getGRNSlots();
+        for (int i = 0; i < slots.traitNodes.length; i++) {
+            ExpressionNode node = slots.traitNodes[i];
+            if (node.mapsToTrait() && slots.traitTargets[i] != null)
+                node.setTraitValue(slots.traitTargets[i], getTraitValue(slots, i));
         }
     }
 
@@ -523,6 +617,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         other.expressionNodes.forEach(expressionNodes::putIfAbsent);
         other.regulators.forEach(regulators::putIfAbsent);
         other.targetMap.forEach(targetMap::putIfAbsent);
+        invalidateGRNSlots();
     }
 
     public Regulators getGeneRegulators() {
@@ -534,26 +629,41 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     }
 
     public Object getGeneValue(String name) {
-        Map<String, Object> deps = expressionNodes.get(name).getDependencies();
-        deps.replaceAll((d, v) -> getTraitValue(d));
-        return getTraitGene(name).getValue(deps);
+        return getGeneValue(expressionNodes.get(name));
+    }
+
+    private Object getGeneValue(ExpressionNode node) {
+        Map<String, Object> deps = node.getDependencies();
+        if (!deps.isEmpty())
+            deps.replaceAll((d, v) -> getTraitValue(d));
+        return node.getTrait().getValue(deps);
     }
 
     public Object getTraitValue(String name) {
-        if (hasGene(name)) {
-            if (notDisabled(name) && geneRegulatoryNetwork != null
-                    && geneRegulatoryNetwork.hasOutput(GRNFactory.getOutputName(name))) {
-                float grnOutput = geneRegulatoryNetwork.getOutput(GRNFactory.getOutputName(name));
-                Trait<?> trait = getTraitGene(name);
-                return parseGRNOutput(trait, grnOutput);
-            } else
-                return getGeneValue(name);
-        }
+        GRNSlots slots = getGRNSlots();
+        Integer i = slots.traitIndices.get(name);
+        if (i == null && hasGene(name)) {
+            invalidateGRNSlots();
+            slots = getGRNSlots();
+            i = slots.traitIndices.get(name);
+        }
+        if (i != null)
+            return getTraitValue(slots, i);
         throw new RuntimeException("Asked to get value for trait " + name + " that does not exist: " + this);
     }
 
-    private boolean notDisabled(String name) {
-        return !getTraitGene(name).isDisabled();
+    private Object getTraitValue(GRNSlots slots, int i) {
+        ExpressionNode node = slots.traitNodes[i];
+        int outputSlot = slots.traitOutputSlots[i];
+        if (outputSlot >= 0 && notDisabled(node)) {
+            float grnOutput = slots.network.getOutput(outputSlot);
+            return parseGRNOutput(node.getTrait(), grnOutput);
+        }
+        return getGeneValue(node);
+    }
+
+    private boolean notDisabled(ExpressionNode node) {
+        return !node.getTrait().isDisabled();
     }
 
     private Object parseGRNOutput(Trait<?> trait, float grnOutput) {
@@ -651,6 +761,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
     public void addNode(String geneName, ExpressionNode node) {
         expressionNodes.put(geneName, node);
+        invalidateGRNSlots();
         if (node.getTrait().canDisable()) {
             String disableName = "Disable " + geneName;
             node.addDependency(disableName);
@@ -691,6 +802,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             newRegulatedTraits.add(name + "/" + regulatedTrait);
         }
         regulatedTraits = newRegulatedTraits;
+        invalidateGRNSlots();
     }
 
     public ExpressionNodes getGenes() {
@@ -0,0 +1,202 @@
+package com.protoevo.biology.evolution;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-class cache of the trait setters and regulator getters used by gene expression.
+ * <br>
+ * Each method is bound once into a typed functional interface generated with
+ * {@link LambdaMetafactory}, so setting a trait or reading a regulator is a direct call with
+ * no reflection and no boxing of primitives. Nodes only keep the method name when serialised,
+ * and look their binding up here by name after being loaded. If a method cannot be bound
+ * with a generated lambda (e.g. it is declared on a non-public class) a {@link MethodHandle}
+ * is used instead.
+ */
+public final class TraitBindings {
+
+    @FunctionalInterface
+    public interface FloatSetter {
+        void set(Object target, float value);
+    }
+
+    @FunctionalInterface
+    public interface IntSetter {
+        void set(Object target, int value);
+    }
+
+    @FunctionalInterface
+    public interface BooleanSetter {
+        void set(Object target, boolean value);
+    }
+
+    @FunctionalInterface
+    public interface ObjectSetter {
+        void set(Object target, Object value);
+    }
+
+    @FunctionalInterface
+    public interface FloatGetter {
+        float get(Object target);
+    }
+
+    /**
+     * Thrown when a value cannot be converted to the parameter type of a trait setter.
+     * Exceptions thrown by the setter itself are not wrapped in this.
+     */
+    public static final class ValueConversionException extends RuntimeException {
+        private ValueConversionException(Object value, Method method) {
+            super("Cannot pass " + value + (value == null ? "" : " (" + value.getClass().getName() + ")")
+                    + " to " + method);
+        }
+    }
+
+    /**
+     * A bound trait setter. Values arriving boxed are unboxed once, widened or narrowed as
+     * {@link Method#invoke} would for numbers, and passed on to the typed setter matching
+     * the method's parameter.
+     */
+    public static final class Setter {
+        private final Method method;
+        private final FloatSetter floatSetter;
+        private final IntSetter intSetter;
+        private final BooleanSetter booleanSetter;
+        private final ObjectSetter objectSetter;
+        private final Class<?> type;
+
+        private Setter(Method method) {
+            this.method = method;
+            type = method.getParameterTypes()[0];
+            floatSetter = type == float.class ? bind(method, FloatSetter.class, float.class) : null;
+            intSetter = type == int.class ? bind(method, IntSetter.class, int.class) : null;
+            booleanSetter = type == boolean.class ? bind(method, BooleanSetter.class, boolean.class) : null;
+            objectSetter = type.isPrimitive() ? null : bind(method, ObjectSetter.class, Object.class);
+        }
+
+        public void set(Object target, Object value) {
+            if (floatSetter != null)
+                floatSetter.set(target, toNumber(value).floatValue());
+            else if (intSetter != null)
+                intSetter.set(target, toNumber(value).intValue());
+            else if (booleanSetter != null)
+                booleanSetter.set(target, toBoolean(value));
+            else if (objectSetter != null) {
+                if (value != null && !type.isInstance(value))
+                    throw new ValueConversionException(value, method);
+                objectSetter.set(target, value);
+            }
+            else
+                throw new RuntimeException("Unsupported trait setter signature: " + method);
+        }
+
+        private Number toNumber(Object value) {
+            if (!(value instanceof Number))
+                throw new ValueConversionException(value, method);
+            return (Number) value;
+        }
+
+        private boolean toBoolean(Object value) {
+            if (!(value instanceof Boolean))
+                throw new ValueConversionException(value, method);
+            return (Boolean) value;
+        }
+
+        public void setFloat(Object target, float value) {
+            if (floatSetter != null)
+                floatSetter.set(target, value);
+            else
+                set(target, value);
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+    }
+
+    private static final ClassValue<Map<String, Method>> methodsByName = new ClassValue<Map<String, Method>>() {
+        @Override
+        protected Map<String, Method> computeValue(Class<?> clazz) {
+            Map<String, Method> methods = new HashMap<>();
+            for (Method method : clazz.getMethods())
+                methods.putIfAbsent(method.getName(), method);
+            return methods;
+        }
+    };
+
+    private static final Map<Method, Setter> methodSetters = new ConcurrentHashMap<>();
+    private static final Map<Method, FloatGetter> methodGetters = new ConcurrentHashMap<>();
+
+    private TraitBindings() {}
+
+    /**
+     * @return the public method of the class with the given name, or null if there is none
+     */
+    public static Method findMethod(Class<?> clazz, String methodName) {
+        return methodsByName.get(clazz).get(methodName);
+    }
+
+    public static Setter setter(Method method) {
+        return methodSetters.computeIfAbsent(method, Setter::new);
+    }
+
+    public static FloatGetter getter(Method method) {
+        return methodGetters.computeIfAbsent(method, TraitBindings::bindGetter);
+    }
+
+    private static FloatGetter bindGetter(Method method) {
+        if (method.getReturnType() == float.class)
+            return bind(method, FloatGetter.class, null);
+
+        MethodHandle handle = unreflect(method)
+                .asType(MethodType.methodType(float.class, Object.class));
+        return target -> {
+            try {
+                return (float) handle.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new RuntimeException("Failed to get value from " + method, t);
+            }
+        };
+    }
+
+    /**
+     * Binds a setter (when valueType is given) or a getter (when it is null) to the
+     * single abstract method of the interface.
+     */
+    private static <T> T bind(Method method, Class<T> fnInterface, Class<?> valueType) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle = unreflect(method);
+        MethodType samType = valueType == null
+                ? MethodType.methodType(float.class, Object.class)
+                : MethodType.methodType(void.class, Object.class, valueType);
+        MethodType instantiatedType = valueType == null
+                ? MethodType.methodType(float.class, method.getDeclaringClass())
+                : MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]);
+        String samName = fnInterface.getMethods()[0].getName();
+        try {
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup, samName, MethodType.methodType(fnInterface),
+                    samType, handle, instantiatedType);
+            return fnInterface.cast(site.getTarget().invoke());
+        } catch (Throwable t) {
+            return MethodHandleProxies.asInterfaceInstance(fnInterface, handle.asType(samType));
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Cannot access trait method " + method + ": " + e);
+        }
+    }
+}
@@ -122,6 +122,14 @@ public abstract class ActivationFn implements Serializable, Function<Float, Floa
         public Float apply(Float z) {
             return Functions.cyclicalLinearRemap(z, -1, 1, min, max);
         }
+
+        public float getMin() {
+            return min;
+        }
+
+        public float getMax() {
+            return max;
+        }
     }
 
 //    public static ActivationFn getOutputMapper(float min, float max) {
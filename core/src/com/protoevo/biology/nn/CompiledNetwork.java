@@ -0,0 +1,155 @@
+package com.protoevo.biology.nn;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.protoevo.maths.Functions;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flat evaluation form of a {@link NeuralNetwork}, built once from its neurons.
+ * <br>
+ * Incoming connections are stored in compressed sparse row form (neuron n reads
+ * {@code inputIds[inputStarts[n]..inputStarts[n+1])}) and activation functions are
+ * reduced to opcodes, so a tick is a tight loop over primitive arrays with no pointer
+ * chasing and no boxing. Neuron states live in arrays owned by the network.
+ */
+public final class CompiledNetwork {
+
+    static final byte SIGMOID = 0, LINEAR = 1, TANH = 2, STEP = 3, RELU = 4,
+            SIN = 5, GAUSSIAN = 6, REMAP = 7, BOOLEAN = 8, CUSTOM = 9;
+
+    final int size;
+    final int[] inputStarts;
+    final int[] inputIds;
+    final float[] weights;
+    final byte[] opcodes;
+    final float[] remapMin, remapMax;
+    private final ActivationFn[] customActivations;
+    private int topologyHash;
+
+    CompiledNetwork(List<Neuron> neurons) {
+        size = neurons.size();
+        inputStarts = new int[size + 1];
+        opcodes = new byte[size];
+        remapMin = new float[size];
+        remapMax = new float[size];
+        customActivations = new ActivationFn[size];
+
+        int nConnections = 0;
+        for (int n = 0; n < size; n++) {
+            inputStarts[n] = nConnections;
+            for (Neuron input : neurons.get(n).getInputs())
+                if (input != null)
+                    nConnections++;
+        }
+        inputStarts[size] = nConnections;
+
+        inputIds = new int[nConnections];
+        weights = new float[nConnections];
+        for (int n = 0; n < size; n++) {
+            Neuron neuron = neurons.get(n);
+            Neuron[] inputs = neuron.getInputs();
+            int k = inputStarts[n];
+            for (int i = 0; i < inputs.length; i++) {
+                if (inputs[i] == null)
+                    continue;
+                inputIds[k] = inputs[i].getId();
+                weights[k] = neuron.getWeights()[i];
+                k++;
+            }
+
+            ActivationFn activation = neuron.getActivation();
+            opcodes[n] = opcodeOf(activation);
+            if (opcodes[n] == REMAP) {
+                remapMin[n] = ((ActivationFn.OutputActivationFn) activation).getMin();
+                remapMax[n] = ((ActivationFn.OutputActivationFn) activation).getMax();
+            } else if (opcodes[n] == CUSTOM) {
+                customActivations[n] = activation;
+            }
+        }
+    }
+
+    static byte opcodeOf(ActivationFn activation) {
+        if (activation instanceof ActivationFn.SigmoidFn) return SIGMOID;
+        if (activation instanceof ActivationFn.LinearFn) return LINEAR;
+        if (activation instanceof ActivationFn.TanhFn) return TANH;
+        if (activation instanceof ActivationFn.StepFn) return STEP;
+        if (activation instanceof ActivationFn.ReLuFn) return RELU;
+        if (activation instanceof ActivationFn.SinFn) return SIN;
+        if (activation instanceof ActivationFn.GaussianFn) return GAUSSIAN;
+        if (activation instanceof ActivationFn.OutputActivationFn) return REMAP;
+        if (activation instanceof ActivationFn.BooleanInputFn) return BOOLEAN;
+        return CUSTOM;
+    }
+
+    float activate(int neuron, float z) {
+        switch (opcodes[neuron]) {
+            case SIGMOID: return Functions.sigmoid(z);
+            case LINEAR: return z;
+            case TANH: return Functions.tanh(z);
+            case STEP: return Functions.step(z);
+            case RELU: return Functions.relu(z);
+            case SIN: return MathUtils.sin(z);
+            case GAUSSIAN: return Functions.gaussian(z);
+            case REMAP: return Functions.cyclicalLinearRemap(z, -1, 1, remapMin[neuron], remapMax[neuron]);
+            case BOOLEAN: return z > 0 ? 1f : -1f;
+            default: return customActivations[neuron].apply(z);
+        }
+    }
+
+    /**
+     * Computes every neuron's next state from the current states, then makes it current.
+     */
+    void tick(float[] states, float[] lastStates, float[] nextStates) {
+        for (int n = 0; n < size; n++) {
+            float z = 0f;
+            for (int k = inputStarts[n]; k < inputStarts[n + 1]; k++)
+                z += states[inputIds[k]] * weights[k];
+            nextStates[n] = activate(n, z);
+        }
+        System.arraycopy(states, 0, lastStates, 0, size);
+        System.arraycopy(nextStates, 0, states, 0, size);
+    }
+
+    /**
+     * Networks with the same topology differ only in their weights (and custom activations),
+     * so they can be evaluated together.
+     */
+    public boolean hasSameTopology(CompiledNetwork other) {
+        if (other == this)
+            return true;
+        if (other.size != size || other.inputIds.length != inputIds.length)
+            return false;
+        if (!Arrays.equals(inputStarts, other.inputStarts)
+                || !Arrays.equals(inputIds, other.inputIds)
+                || !Arrays.equals(opcodes, other.opcodes)
+                || !Arrays.equals(remapMin, other.remapMin)
+                || !Arrays.equals(remapMax, other.remapMax))
+            return false;
+        for (int n = 0; n < size; n++)
+            if (customActivations[n] != other.customActivations[n])
+                return false;
+        return true;
+    }
+
+    public int topologyHash() {
+        if (topologyHash == 0) {
+            int hash = 31 * size + Arrays.hashCode(inputStarts);
+            hash = 31 * hash + Arrays.hashCode(inputIds);
+            hash = 31 * hash + Arrays.hashCode(opcodes);
+            hash = 31 * hash + Arrays.hashCode(remapMin);
+            hash = 31 * hash + Arrays.hashCode(remapMax);
+            topologyHash = hash == 0 ? 1 : hash;
+        }
+        return topologyHash;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getConnectionCount() {
+        return inputIds.length;
+    }
+}
@@ -0,0 +1,165 @@
+package com.protoevo.biology.nn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ticks many networks at once by grouping those that share a topology.
+ * <br>
+ * The states and weights of each group are laid out as matrices with one column per
+ * network ({@code states[neuron * batchSize + b]}), so the weighted sum and activation of
+ * a neuron are computed for the whole group in a single pass over contiguous memory.
+ * When the {@code jdk.incubator.vector} module is available that pass uses the Vector API,
+ * otherwise a scalar loop is used. Networks whose topology is not shared are ticked on
+ * their own.
+ * Every lane is computed exactly as {@link NeuralNetwork#tick} would compute it, so a network's
+ * new states do not depend on whether or with which other networks it was batched.
+ * <br>
+ * Networks are added from a single thread; groups are then evaluated in parallel.
+ */
+public class NetworkBatchEvaluator {
+
+    static final boolean VECTOR_API_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static final class TopologyKey {
+        private final CompiledNetwork topology;
+
+        private TopologyKey(CompiledNetwork topology) {
+            this.topology = topology;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TopologyKey && topology.hasSameTopology(((TopologyKey) o).topology);
+        }
+
+        @Override
+        public int hashCode() {
+            return topology.topologyHash();
+        }
+    }
+
+    private static final class Group {
+        private final CompiledNetwork topology;
+        private final List<NeuralNetwork> networks = new ArrayList<>();
+        private float[] states = new float[0], nextStates = new float[0], weights = new float[0], z = new float[0];
+
+        private Group(CompiledNetwork topology) {
+            this.topology = topology;
+        }
+
+        private void tick() {
+            if (networks.size() == 1) {
+                networks.get(0).tick();
+                return;
+            }
+
+            int batch = networks.size();
+            int size = topology.size;
+            int nConnections = topology.getConnectionCount();
+            if (states.length < size * batch) {
+                states = new float[size * batch];
+                nextStates = new float[size * batch];
+            }
+            if (weights.length < nConnections * batch)
+                weights = new float[nConnections * batch];
+            if (z.length < batch)
+                z = new float[batch];
+
+            for (int b = 0; b < batch; b++) {
+                NeuralNetwork network = networks.get(b);
+                float[] networkStates = network.getStates();
+                float[] networkWeights = network.getCompiled().weights;
+                for (int n = 0; n < size; n++)
+                    states[n * batch + b] = networkStates[n];
+                for (int k = 0; k < nConnections; k++)
+                    weights[k * batch + b] = networkWeights[k];
+            }
+
+            for (int n = 0; n < size; n++) {
+                Arrays.fill(z, 0, batch, 0f);
+                for (int k = topology.inputStarts[n]; k < topology.inputStarts[n + 1]; k++)
+                    accumulate(topology.inputIds[k] * batch, k * batch, batch);
+                activate(n, n * batch, batch);
+            }
+
+            for (int b = 0; b < batch; b++) {
+                NeuralNetwork network = networks.get(b);
+                float[] networkStates = network.getStates();
+                float[] networkLastStates = network.getLastStates();
+                for (int n = 0; n < size; n++) {
+                    networkLastStates[n] = states[n * batch + b];
+                    networkStates[n] = nextStates[n * batch + b];
+                }
+            }
+        }
+
+        private void accumulate(int stateOffset, int weightOffset, int batch) {
+            if (VECTOR_API_AVAILABLE) {
+                VectorKernels.accumulate(z, states, stateOffset, weights, weightOffset, batch);
+                return;
+            }
+            for (int b = 0; b < batch; b++)
+                z[b] += states[stateOffset + b] * weights[weightOffset + b];
+        }
+
+        private void activate(int neuron, int outOffset, int batch) {
+            if (VECTOR_API_AVAILABLE
+                    && VectorKernels.activate(topology.opcodes[neuron], z, nextStates, outOffset, batch))
+                return;
+            for (int b = 0; b < batch; b++)
+                nextStates[outOffset + b] = topology.activate(neuron, z[b]);
+        }
+    }
+
+    private final Map<TopologyKey, Group> groups = new HashMap<>();
+    private final List<Group> activeGroups = new ArrayList<>();
+    private int lastGroupCount, lastNetworkCount;
+
+    public void add(NeuralNetwork network) {
+        CompiledNetwork topology = network.getCompiled();
+        Group group = groups.computeIfAbsent(new TopologyKey(topology), key -> new Group(topology));
+        if (group.networks.isEmpty())
+            activeGroups.add(group);
+        group.networks.add(network);
+    }
+
+    public boolean isEmpty() {
+        return activeGroups.isEmpty();
+    }
+
+    /**
+     * Ticks every network added since the last call, then empties the batch.
+     * Groups that received no networks are dropped so stale topologies do not accumulate.
+     */
+    public void tickAll() {
+        activeGroups.parallelStream().forEach(Group::tick);
+
+        lastGroupCount = activeGroups.size();
+        lastNetworkCount = 0;
+        for (Group group : activeGroups)
+            lastNetworkCount += group.networks.size();
+
+        Iterator<Group> iterator = groups.values().iterator();
+        while (iterator.hasNext()) {
+            Group group = iterator.next();
+            if (group.networks.isEmpty())
+                iterator.remove();
+            group.networks.clear();
+        }
+        activeGroups.clear();
+    }
+
+    public int getLastGroupCount() {
+        return lastGroupCount;
+    }
+
+    public int getLastNetworkCount() {
+        return lastNetworkCount;
+    }
+}
@@ -20,6 +20,9 @@ public class NeuralNetwork implements Serializable
     private int nInputs;
     private boolean computedGraphics = false;
     private float nodeSpacing;
+    private float[] states, lastStates;
+    private transient float[] nextStates;
+    private transient CompiledNetwork compiled;
 
     public NeuralNetwork() {}
 
@@ -63,6 +66,59 @@ public class NeuralNetwork implements Serializable
         Arrays.fill(outputs, 0f);
 
         depth = calculateDepth();
+        ensureCompiled();
+    }
+
+    /**
+     * Builds the flat evaluator and binds the neurons to this network's state arrays.
+     * Networks are compiled on construction, and lazily after being deserialised.
+     */
+    private void ensureCompiled() {
+        if (compiled != null)
+            return;
+
+        compiled = new CompiledNetwork(neurons);
+        int size = compiled.getSize();
+        if (states == null || states.length != size) {
+            states = new float[size];
+            lastStates = new float[size];
+            for (int i = 0; i < size; i++) {
+                states[i] = neurons.get(i).getStoredState();
+                lastStates[i] = neurons.get(i).getStoredLastState();
+            }
+        }
+        nextStates = new float[size];
+        for (Neuron neuron : neurons)
+            neuron.bind(this);
+    }
+
+    void invalidateCompiled() {
+        compiled = null;
+    }
+
+    public CompiledNetwork getCompiled() {
+        ensureCompiled();
+        return compiled;
+    }
+
+    float[] getStates() {
+        return states;
+    }
+
+    float[] getLastStates() {
+        return lastStates;
+    }
+
+    float getState(int id) {
+        return states[id];
+    }
+
+    float getLastState(int id) {
+        return lastStates[id];
+    }
+
+    void setState(int id, float value) {
+        states[id] = compiled.activate(id, value);
     }
 
     public int getDepth() {
@@ -112,18 +168,20 @@ public class NeuralNetwork implements Serializable
     }
 
     public void setInput(float ... values) {
+        ensureCompiled();
         for (int i = 0; i < values.length; i++)
             inputNeurons[i].setState(values[i]);
     }
 
     public void tick()
     {
-        for (Neuron n : neurons) n.tick();
-        for (Neuron n : neurons) n.update();
+        ensureCompiled();
+        compiled.tick(states, lastStates, nextStates);
     }
 
     public float[] outputs()
     {
+        ensureCompiled();
         for (int i = 0; i < outputNeurons.length; i++)
             outputs[i] = outputNeurons[i].getState();
         return outputs;
@@ -146,14 +204,17 @@ public class NeuralNetwork implements Serializable
     }
 
     public List<Neuron> getNeurons() {
+        ensureCompiled();
         return neurons;
     }
 
     public Neuron[] getInputNeurons() {
+        ensureCompiled();
         return inputNeurons;
     }
 
     public Neuron[] getOutputNeurons() {
+        ensureCompiled();
         return outputNeurons;
     }
 
@@ -195,6 +256,29 @@ public class NeuralNetwork implements Serializable
         }
     }
 
+    /**
+     * Resolves a labelled neuron to an integer slot once, so that it can be read and written
+     * every tick with {@link #setInput(int, float)} and {@link #getOutput(int)}.
+     *
+     * @return the slot of the neuron with the given label, or -1 if there is none
+     */
+    public int getSlot(String label) {
+        for (Neuron n : neurons)
+            if (n.hasLabel() && n.getLabel().equals(label))
+                return n.getId();
+        return -1;
+    }
+
+    public void setInput(int slot, float value) {
+        ensureCompiled();
+        setState(slot, value);
+    }
+
+    public float getOutput(int slot) {
+        ensureCompiled();
+        return states[slot];
+    }
+
     public boolean hasSensor(String label) {
         if (inputLabels.containsKey(label))
             return true;
@@ -209,6 +293,7 @@ public class NeuralNetwork implements Serializable
     }
 
     public void setInput(String label, float value) {
+        ensureCompiled();
         if (inputLabels.containsKey(label)) {
             inputLabels.get(label).setState(value);
             return;
@@ -223,6 +308,7 @@ public class NeuralNetwork implements Serializable
     }
 
     public float getOutput(String label) {
+        ensureCompiled();
         if (outputLabels.containsKey(label))
             return outputLabels.get(label).getState();
 
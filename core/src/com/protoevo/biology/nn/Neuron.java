@@ -31,7 +31,7 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     private float[] weights;
     private Type type;
     private int id;
-    private float state = 0, lastState = 0, nextState = 0;
+    private float state = 0, lastState = 0;
     private float learningRate = 0;
     private ActivationFn activation;
     private int depth = -1;
@@ -41,6 +41,7 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     private String label;
     private Object[] tags;
     private boolean active;
+    private transient NeuralNetwork network;
 
     public Neuron() {}
 
@@ -57,18 +58,19 @@ public class Neuron implements Comparable<Neuron>, Serializable {
             connectedToOutput = true;
     }
 
-    void tick()
-    {
-        nextState = 0.0f;
-        for (int i = 0; i < inputs.length; i++)
-            nextState += inputs[i].getState() * weights[i];
-        nextState = activation.apply(nextState);
+    /**
+     * Once part of a network, the neuron's state is held in the network's compiled state arrays.
+     */
+    void bind(NeuralNetwork network) {
+        this.network = network;
     }
 
-    void update()
-    {
-        lastState = state;
-        state = nextState;
+    float getStoredState() {
+        return state;
+    }
+
+    float getStoredLastState() {
+        return lastState;
     }
 
     @Override
@@ -87,20 +89,25 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     }
 
     public float getState() {
-        return state;
+        return network != null ? network.getState(id) : state;
     }
 
     public float getLastState() {
-        return lastState;
+        return network != null ? network.getLastState(id) : lastState;
     }
 
     public Neuron setState(float s) {
-        state = activation.apply(s);
+        if (network != null)
+            network.setState(id, s);
+        else
+            state = activation.apply(s);
         return this;
     }
 
     public Neuron setActivation(ActivationFn activation) {
         this.activation = activation;
+        if (network != null)
+            network.invalidateCompiled();
         return this;
     }
 
@@ -157,7 +164,7 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     @Override
     public String toString()
     {
-        StringBuilder s = new StringBuilder(String.format("id:%d, state:%.1f", id, state));
+        StringBuilder s = new StringBuilder(String.format("id:%d, state:%.1f", id, getState()));
         if (label != null)
             s.append(", label: ").append(label);
         s.append(", connections: [");
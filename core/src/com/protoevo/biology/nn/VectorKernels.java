@@ -0,0 +1,76 @@
+package com.protoevo.biology.nn;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API loops used by {@link NetworkBatchEvaluator}.
+ * Only loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {}
+
+    /**
+     * {@code z[b] += states[stateOffset + b] * weights[weightOffset + b]} for every b in the batch.
+     */
+    static void accumulate(float[] z, float[] states, int stateOffset,
+                           float[] weights, int weightOffset, int batch) {
+        int b = 0;
+        int upperBound = SPECIES.loopBound(batch);
+        for (; b < upperBound; b += SPECIES.length()) {
+            FloatVector s = FloatVector.fromArray(SPECIES, states, stateOffset + b);
+            FloatVector w = FloatVector.fromArray(SPECIES, weights, weightOffset + b);
+            // mul then add rather than fma, to round exactly as the scalar loop does
+            s.mul(w).add(FloatVector.fromArray(SPECIES, z, b)).intoArray(z, b);
+        }
+        for (; b < batch; b++)
+            z[b] += states[stateOffset + b] * weights[weightOffset + b];
+    }
+
+    /**
+     * Applies the activation to every z in the batch and writes the results to {@code out}.
+     * Only activations whose vector form gives bit-identical results to {@link CompiledNetwork#activate}
+     * are vectorised: the transcendental ones (sigmoid, tanh, gaussian) are computed in double
+     * precision by the scalar path, which the float lanewise operators do not reproduce.
+     *
+     * @return false if the activation has no exact vectorised form, in which case nothing is written
+     */
+    static boolean activate(byte opcode, float[] z, float[] out, int outOffset, int batch) {
+        switch (opcode) {
+            case CompiledNetwork.LINEAR: case CompiledNetwork.STEP:
+            case CompiledNetwork.RELU: case CompiledNetwork.BOOLEAN:
+                break;
+            default:
+                return false;
+        }
+
+        int b = 0;
+        int upperBound = SPECIES.loopBound(batch);
+        for (; b < upperBound; b += SPECIES.length())
+            activate(opcode, FloatVector.fromArray(SPECIES, z, b)).intoArray(out, outOffset + b);
+
+        if (b < batch) {
+            VectorMask<Float> mask = SPECIES.indexInRange(b, batch);
+            activate(opcode, FloatVector.fromArray(SPECIES, z, b, mask)).intoArray(out, outOffset + b, mask);
+        }
+        return true;
+    }
+
+    private static FloatVector activate(byte opcode, FloatVector z) {
+        switch (opcode) {
+            case CompiledNetwork.STEP:
+                return z.broadcast(0f).blend(1f, z.compare(VectorOperators.GT, 0f));
+            case CompiledNetwork.RELU:
+                return z.broadcast(0f).blend(z, z.compare(VectorOperators.GT, 0f));
+            case CompiledNetwork.BOOLEAN:
+                return z.broadcast(-1f).blend(1f, z.compare(VectorOperators.GT, 0f));
+            default:
+                return z;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.protoevo.biology.nodes;
 
 import com.badlogic.gdx.math.Vector2;
+import com.protoevo.biology.CellInteractions;
 import com.protoevo.biology.ComplexMolecule;
 import com.protoevo.biology.cells.Cell;
 import com.protoevo.biology.cells.Protozoan;
@@ -112,45 +113,48 @@ public class AdhesionReceptor extends NodeAttachment {
         Optional<Cell> maybeOther = getOtherCell();
         if (!maybeOther.isPresent())
             return;
-        Cell other = maybeOther.get();
+        cell.getInteractions().exchangeResources(this, cell, maybeOther.get(), delta);
+    }
 
+    /**
+     * Evens out the resources of the bound cells. The amounts depend on the state of both
+     * cells, so this is applied by {@link CellInteractions} rather than during the cell update.
+     */
+    public void exchangeResources(Cell other, float delta) {
+        Cell cell = node.getCell();
         float transferRate = Environment.settings.cell.bindingResourceTransport.get();
 
+        CellInteractions interactions = cell.getInteractions();
+
         float massDelta = cell.getConstructionMassAvailable() - other.getConstructionMassAvailable();
         constructionMassTransfer = Math.abs(transferRate * massDelta * delta);
-        if (massDelta > 0) {
-            other.addConstructionMass(constructionMassTransfer);
-            cell.depleteConstructionMass(constructionMassTransfer);
-        } else {
-            cell.addConstructionMass(constructionMassTransfer);
-            other.depleteConstructionMass(constructionMassTransfer);
-        }
+        if (massDelta > 0)
+            interactions.transferConstructionMass(cell, cell, other, constructionMassTransfer);
+        else
+            interactions.transferConstructionMass(cell, other, cell, constructionMassTransfer);
 
         float energyDelta = cell.getEnergyAvailable() - other.getEnergyAvailable();
         energyTransfer = Math.abs(transferRate * energyDelta * delta);
-        if (energyDelta > 0) {
-            other.addAvailableEnergy(energyTransfer);
-            cell.depleteEnergy(energyTransfer);
-        } else {
-            cell.addAvailableEnergy(energyTransfer);
-            other.depleteEnergy(energyTransfer);
-        }
+        if (energyDelta > 0)
+            interactions.transferEnergy(cell, cell, other, energyTransfer);
+        else
+            interactions.transferEnergy(cell, other, cell, energyTransfer);
 
         molecularMassTransfer = 0;
         for (ComplexMolecule molecule : cell.getComplexMolecules())
-            handleComplexMoleculeTransport(other, cell, molecule, delta);
+            handleComplexMoleculeTransport(interactions, other, cell, molecule, delta);
         for (ComplexMolecule molecule : other.getComplexMolecules())
-            handleComplexMoleculeTransport(cell, other, molecule, delta);
+            handleComplexMoleculeTransport(interactions, cell, other, molecule, delta);
     }
 
-    private void handleComplexMoleculeTransport(Cell src, Cell dst, ComplexMolecule molecule, float delta) {
+    private void handleComplexMoleculeTransport(
+            CellInteractions interactions, Cell src, Cell dst, ComplexMolecule molecule, float delta) {
         float massDelta = dst.getComplexMoleculeAvailable(molecule) - src.getComplexMoleculeAvailable(molecule);
         float transferRate = Environment.settings.cell.bindingResourceTransport.get();
         if (massDelta > 0) {
             float massTransfer = transferRate * massDelta * delta;
             molecularMassTransfer += massTransfer;
-            dst.addAvailableComplexMolecule(molecule, massTransfer);
-            src.depleteComplexMolecule(molecule, massTransfer);
+            interactions.transferComplexMolecule(node.getCell(), src, dst, molecule, massTransfer);
         }
     }
 
@@ -1,7 +1,6 @@
 package com.protoevo.biology.nodes;
 
 import com.badlogic.gdx.math.Vector2;
-import com.protoevo.biology.CauseOfDeath;
 import com.protoevo.biology.cells.*;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.Environment;
@@ -146,9 +145,8 @@ public class PhagocyticReceptor extends NodeAttachment implements Serializable {
 
     public void engulf(Cell cell) {
         lastEngulfed = cell;
-        cell.setEngulfer(node.getCell());
-        cell.kill(CauseOfDeath.EATEN);
-        ((Protozoan) node.getCell()).getEngulfedCells().add(cell);
+        Protozoan engulfer = (Protozoan) node.getCell();
+        engulfer.getInteractions().engulf(engulfer, cell);
     }
 
     @Override
@@ -2,12 +2,11 @@ package com.protoevo.biology.nodes;
 
 import com.badlogic.gdx.math.Vector2;
 import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.Environment;
+import com.protoevo.env.RayCaster;
 import com.protoevo.maths.Functions;
-import com.protoevo.physics.Coloured;
-import com.protoevo.maths.Shape;
-import com.protoevo.physics.box2d.Box2DParticle;
 import com.protoevo.utils.Colour;
 
 
@@ -23,9 +22,7 @@ public class Photoreceptor extends NodeAttachment implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private final Vector2[] ray = new Vector2[]{new Vector2(), new Vector2()};
-    private final Shape.Intersection[] intersections =
-            new Shape.Intersection[]{new Shape.Intersection(), new Shape.Intersection()};
-    private final Vector2 tmp = new Vector2(), tmp2 = new Vector2();
+    private final Vector2 tmp = new Vector2();
     private final Vector2 attachmentRelPos = new Vector2();
     private float interactionRange = 0;
     private final Colour colour = new Colour();
@@ -37,6 +34,9 @@ public class Photoreceptor extends NodeAttachment implements Serializable {
     private static final float radiansPerRay = maxFoV / 8f; // max of 8 rays
     public int nRays = 8;
     public float fov = maxFoV / 2f;
+    // where the rays cast in the last update hit, packed as (x, y), for debug rendering
+    private final transient float[] rayHits = new float[2 * Math.round(maxFoV / radiansPerRay)];
+    private transient int nRayHits;
 
     public Photoreceptor() {
         super(null);
@@ -115,11 +115,15 @@ public class Photoreceptor extends NodeAttachment implements Serializable {
         ray[0].set(attachmentRelPos)
                 .add(node.getCell().getPos());
 
-        for (reset(); rayIdx < nRays; nextRay()) {
-            Cell cell = node.getCell();
-            for (Object o : cell.getParticle().getInteractionQueue())
-                if (o instanceof Shape && o instanceof Coloured)
-                    computeIntersections((Shape) o);
+        Cell cell = node.getCell();
+        reset();
+        nRayHits = 0;
+        if (cell instanceof Protozoan && cell.getEnv().isPresent()) {
+            RayCaster caster = ((Protozoan) cell).getRayCaster();
+            caster.gather(cell, cell.getEnv().get(), interactionRange);
+            caster.cullOutsideCone(attachmentRelPos.x, attachmentRelPos.y, fov / 2f);
+            while (rayIdx < nRays)
+                castRay(caster, nextRay());
         }
 
         switch (colourSensitivity) {
@@ -141,44 +145,22 @@ public class Photoreceptor extends NodeAttachment implements Serializable {
         reset();
     }
 
-	public boolean cullFromRayCasting(Shape o) {
-		if (o instanceof Box2DParticle) {
-			Vector2 otherPos = ((Box2DParticle) o).getPos();
-            Vector2 myPos = node.getCell().getPos();
-			Vector2 dx = tmp.set(otherPos).sub(myPos).nor();
-            Vector2 dir = tmp2.set(attachmentRelPos).add(myPos).nor();
-			return dx.dot(dir) < Math.cos(fov / 2f);
-		}
-		return false;
-	}
-
-    public Shape.Intersection[] computeIntersections(Shape o) {
-        intersections[0].didCollide = false;
-        intersections[1].didCollide = false;
-        boolean anyCollision = o.rayCollisions(ray, intersections);
-        if (!anyCollision)
-            return intersections;
-
-        float sqLen = Float.MAX_VALUE;
-        Shape.Intersection collisionIntersection = null;
-        for (Shape.Intersection intersection : intersections) {
-            if (intersection.didCollide) {
-                sqLen = Math.min(sqLen, intersection.point.dst2(ray[0]));
-                collisionIntersection = intersection;
-            }
-        }
+    private void castRay(RayCaster caster, Vector2[] ray) {
+        if (!caster.cast(ray[0].x, ray[0].y, ray[1].x, ray[1].y))
+            return;
 
-        if (sqLen < minSqLen && collisionIntersection != null) {
-            minSqLen = sqLen;
-            float light = node.getCell().getLightAt(collisionIntersection.point);
-            float w = light * getConstructionProgress() * computeColourFalloffWeight();
-            Coloured coloured = (Coloured) o;
-            r += coloured.getColour().r * w;
-            g += coloured.getColour().g * w;
-            b += coloured.getColour().b * w;
+        minSqLen = ray[0].dst2(ray[1]) * caster.getHitT() * caster.getHitT();
+        if (2 * nRayHits < rayHits.length) {
+            rayHits[2 * nRayHits] = caster.getHitX();
+            rayHits[2 * nRayHits + 1] = caster.getHitY();
+            nRayHits++;
         }
-
-        return intersections;
+        float light = node.getCell().getLightAt(tmp.set(caster.getHitX(), caster.getHitY()));
+        float w = light * getConstructionProgress() * computeColourFalloffWeight();
+        Colour hitColour = caster.getHitColour();
+        r += hitColour.r * w;
+        g += hitColour.g * w;
+        b += hitColour.b * w;
     }
 
     public void reset() {
@@ -195,6 +177,18 @@ public class Photoreceptor extends NodeAttachment implements Serializable {
         return ray;
     }
 
+    public int getNRayHits() {
+        return nRayHits;
+    }
+
+    public float getRayHitX(int i) {
+        return rayHits[2 * i];
+    }
+
+    public float getRayHitY(int i) {
+        return rayHits[2 * i + 1];
+    }
+
     public Colour getColour() {
         return colour;
     }
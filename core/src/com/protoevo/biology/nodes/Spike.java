@@ -80,7 +80,7 @@ public class Spike extends NodeAttachment implements Serializable {
 
                     if (myLastAttack > theirLastDefense) {
                         float dps = attackFactor * (myLastAttack - theirLastDefense);
-                        other.damage(dps * delta, CauseOfDeath.SPIKE_DAMAGE);
+                        cell.getInteractions().damage(cell, other, dps * delta, CauseOfDeath.SPIKE_DAMAGE);
                         lastDPS = dps;
                     }
                     else {
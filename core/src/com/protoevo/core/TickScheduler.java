@@ -0,0 +1,181 @@
+package com.protoevo.core;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the phases of a simulation tick on a dedicated worker pool.
+ * <br>
+ * Each phase declares the resources it reads and writes. A phase waits for every
+ * earlier phase that it conflicts with (write/write, read/write or write/read),
+ * while phases with disjoint access run concurrently. Registration order therefore
+ * defines the semantics of the tick, exactly as the old sequential update did.
+ * <br>
+ * Parallel streams started from inside a phase run on the scheduler's pool rather
+ * than the common pool, so the worker thread count is the only knob controlling how
+ * much of the machine a simulation uses.
+ */
+public class TickScheduler {
+
+    public static class Phase {
+        private final String name;
+        private final Runnable task;
+        private final Set<Object> reads = new HashSet<>();
+        private final Set<Object> writes = new HashSet<>();
+        private final List<Phase> dependencies = new ArrayList<>();
+        private boolean runOnCallingThread = false;
+        private long lastDurationNanos;
+
+        public Phase(String name, Runnable task) {
+            this.name = name;
+            this.task = task;
+        }
+
+        public Phase reads(Object... resources) {
+            reads.addAll(Arrays.asList(resources));
+            return this;
+        }
+
+        public Phase writes(Object... resources) {
+            writes.addAll(Arrays.asList(resources));
+            return this;
+        }
+
+        /**
+         * Phases that touch thread-bound state (e.g. GPU contexts) must run on the thread
+         * that called {@link TickScheduler#runTick()}.
+         */
+        public Phase runOnCallingThread(boolean runOnCallingThread) {
+            this.runOnCallingThread = runOnCallingThread;
+            return this;
+        }
+
+        public boolean conflictsWith(Phase other) {
+            return !Collections.disjoint(writes, other.writes)
+                    || !Collections.disjoint(writes, other.reads)
+                    || !Collections.disjoint(reads, other.writes);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Phase> getDependencies() {
+            return dependencies;
+        }
+
+        public float getLastDuration() {
+            return lastDurationNanos / 1e9f;
+        }
+
+        private void execute() {
+            long startTime = System.nanoTime();
+            task.run();
+            lastDurationNanos = System.nanoTime() - startTime;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final List<Phase> phases = new ArrayList<>();
+
+    public TickScheduler(int nThreads) {
+        int parallelism = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(parallelism, TickScheduler::newWorkerThread, null, false);
+    }
+
+    private static ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Simulation Worker " + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public Phase addPhase(Phase phase) {
+        for (Phase earlier : phases)
+            if (phase.conflictsWith(earlier))
+                phase.dependencies.add(earlier);
+        phases.add(phase);
+        return phase;
+    }
+
+    public Phase addPhase(String name, Runnable task) {
+        return addPhase(new Phase(name, task));
+    }
+
+    public void runTick() {
+        Map<Phase, CompletableFuture<Void>> futures = new HashMap<>(phases.size(), 1);
+        List<Phase> callingThreadPhases = new ArrayList<>();
+
+        for (Phase phase : phases) {
+            CompletableFuture<Void> future;
+            if (phase.runOnCallingThread) {
+                future = new CompletableFuture<>();
+                callingThreadPhases.add(phase);
+            } else if (phase.dependencies.isEmpty()) {
+                future = CompletableFuture.runAsync(phase::execute, pool);
+            } else {
+                future = awaitAll(phase.dependencies, futures).thenRunAsync(phase::execute, pool);
+            }
+            futures.put(phase, future);
+        }
+
+        // Dependencies always point to earlier phases, so running the calling-thread
+        // phases in registration order cannot wait on anything that waits on them.
+        for (Phase phase : callingThreadPhases) {
+            CompletableFuture<Void> future = futures.get(phase);
+            try {
+                awaitAll(phase.dependencies, futures).join();
+                phase.execute();
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+
+        try {
+            awaitAll(phases, futures).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException("Simulation tick failed: " + cause, cause);
+        }
+    }
+
+    private static CompletableFuture<Void> awaitAll(
+            List<Phase> phases, Map<Phase, CompletableFuture<Void>> futures) {
+        List<CompletableFuture<?>> dependencies = new ArrayList<>(phases.size());
+        for (Phase phase : phases)
+            dependencies.add(futures.get(phase));
+        return CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS))
+                pool.shutdownNow();
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.protoevo.env;
 
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.protoevo.biology.Food;
 import com.protoevo.biology.cells.Cell;
 import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.maths.Functions;
-import com.protoevo.maths.Geometry;
 import com.protoevo.utils.*;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 public class ChemicalSolution implements Serializable {
@@ -22,16 +25,33 @@ public class ChemicalSolution implements Serializable {
     private int chemicalTextureHeight;
     private int chemicalTextureWidth;
     private transient boolean initialised = false;
-    private byte[] byteBuffer;
-    private Colour[][] colours;
+    private transient byte[] byteBuffer;
+    // Channels are stored as flat arrays indexed by y * width + x, matching the GPU byte layout.
+    // Diffusion reads these and writes the next* buffers, which are swapped in afterwards.
+    private float[] red, green, blue, alpha;
+    private transient float[] nextRed, nextGreen, nextBlue, nextAlpha;
+    private transient float[] decayField;
+    private transient volatile boolean hasDiffused = false;
+    // The field is split into square tiles. Live tiles hold chemicals at or above the visible
+    // alpha cutoff (or have been written to since the last diffusion). Diffusion only processes
+    // live tiles and the tiles around them, and clears the rest, so its cost scales with how
+    // much of the field holds chemicals.
+    private transient int tilesX, tilesY;
+    private transient boolean[] liveTiles, nextLiveTiles, diffusedTiles, loadedTiles, changedTiles;
+    // Number of buffers (0, 1 or 2) known to be all zero in each tile
+    private transient byte[] clearedBuffers;
+    // Tiles changed since they were last copied out for rendering
+    private transient boolean[] dirtyTiles;
+    // Rebuilt lazily from the tiles changed by diffusion, the first time it is queried after
+    // each swap, so it lags deposits by at most one diffusion interval
+    private transient DensityPyramid densityPyramid;
+    private transient boolean[] pyramidDirtyTiles;
+    private transient boolean pyramidStale;
     private float timeSinceUpdate = 0;
     private transient JCudaKernelRunner cudaDiffusionKernel;
     private transient GLComputeShaderRunner openGLDiffusionShader;
 
-    public interface ChemicalUpdatedCallback {
-        void onChemicalUpdated(int i, int j, Colour colour);
-    }
-    private transient ChemicalUpdatedCallback updateChemicalCallback;
+    private static final int TILE_SIZE = 32;
 
     public ChemicalSolution() {}
 
@@ -59,19 +79,40 @@ public class ChemicalSolution implements Serializable {
         initialise();
     }
 
-    public void setUpdateChemicalCallback(ChemicalUpdatedCallback updateChemicalCallback) {
-        this.updateChemicalCallback = updateChemicalCallback;
-    }
-
     public void initialise() {
         if (!initialised) {
-            byteBuffer = new byte[chemicalTextureWidth * chemicalTextureHeight * 4];
-            colours = new Colour[chemicalTextureWidth][chemicalTextureHeight];
-            for (int i = 0; i < chemicalTextureWidth; i++) {
-                for (int j = 0; j < chemicalTextureHeight; j++) {
-                    colours[i][j] = new Colour();
-                }
+            int size = chemicalTextureWidth * chemicalTextureHeight;
+            byteBuffer = new byte[size * 4];
+            if (red == null) {
+                red = new float[size];
+                green = new float[size];
+                blue = new float[size];
+                alpha = new float[size];
             }
+            nextRed = new float[size];
+            nextGreen = new float[size];
+            nextBlue = new float[size];
+            nextAlpha = new float[size];
+            decayField = DiffusionStencil.createDecayField(
+                    chemicalTextureWidth, chemicalTextureHeight,
+                    Environment.settings.worldgen.voidStartDistance.get());
+
+            tilesX = (chemicalTextureWidth + TILE_SIZE - 1) / TILE_SIZE;
+            tilesY = (chemicalTextureHeight + TILE_SIZE - 1) / TILE_SIZE;
+            int nTiles = tilesX * tilesY;
+            liveTiles = new boolean[nTiles];
+            Arrays.fill(liveTiles, true);
+            nextLiveTiles = new boolean[nTiles];
+            diffusedTiles = new boolean[nTiles];
+            loadedTiles = new boolean[nTiles];
+            changedTiles = new boolean[nTiles];
+            clearedBuffers = new byte[nTiles];
+            dirtyTiles = new boolean[nTiles];
+            Arrays.fill(dirtyTiles, true);
+            densityPyramid = new DensityPyramid(chemicalTextureWidth, chemicalTextureHeight);
+            pyramidDirtyTiles = new boolean[nTiles];
+            Arrays.fill(pyramidDirtyTiles, true);
+            pyramidStale = true;
 
             initialised = true;
         }
@@ -118,8 +159,18 @@ public class ChemicalSolution implements Serializable {
         return x < 0 || x >= chemicalTextureWidth || y < 0 || y >= chemicalTextureHeight;
     }
 
-    private int toFloatBufferIndex(int x, int y) {
-        return (y * chemicalTextureWidth+ x) * 4;
+    private int toIndex(int x, int y) {
+        return y * chemicalTextureWidth + x;
+    }
+
+    private int toTile(int x, int y) {
+        return (y / TILE_SIZE) * tilesX + x / TILE_SIZE;
+    }
+
+    private int getRGBA8888(int i) {
+        return Color.rgba8888(
+                MathUtils.clamp(red[i], 0, 1), MathUtils.clamp(green[i], 0, 1),
+                MathUtils.clamp(blue[i], 0, 1), MathUtils.clamp(alpha[i], 0, 1));
     }
 
     public int toChemicalGridY(float y) {
@@ -127,27 +178,31 @@ public class ChemicalSolution implements Serializable {
     }
 
     public void set(int x, int y, Colour colour) {
-        if (outOfTextureBounds(x, y))
-            return;
-        colours[x][y].set(colour);
-        if (updateChemicalCallback != null)
-            updateChemicalCallback.onChemicalUpdated(x, y, colour);
+        set(x, y,
+            MathUtils.clamp(colour.r, 0, 1), MathUtils.clamp(colour.g, 0, 1),
+            MathUtils.clamp(colour.b, 0, 1), MathUtils.clamp(colour.a, 0, 1));
     }
 
     public void set(int x, int y, float r, float g, float b, float a) {
         if (outOfTextureBounds(x, y))
             return;
-        colours[x][y].set(r, g, b, a);
-        if (updateChemicalCallback != null)
-            updateChemicalCallback.onChemicalUpdated(x, y, colours[x][y]);
+        int i = toIndex(x, y);
+        red[i] = r;
+        green[i] = g;
+        blue[i] = b;
+        alpha[i] = a;
+        int tile = toTile(x, y);
+        if (r > 0 || g > 0 || b > 0 || a > 0)
+            liveTiles[tile] = true;
+        dirtyTiles[tile] = true;
     }
 
     public void set(int x, int y, int rgba8888) {
-        if (outOfTextureBounds(x, y))
-            return;
-        colours[x][y].set(rgba8888);
-        if (updateChemicalCallback != null)
-            updateChemicalCallback.onChemicalUpdated(x, y, colours[x][y]);
+        set(x, y,
+            ((rgba8888 & 0xff000000) >>> 24) / 255f,
+            ((rgba8888 & 0x00ff0000) >>> 16) / 255f,
+            ((rgba8888 & 0x0000ff00) >>> 8) / 255f,
+            ((rgba8888 & 0x000000ff)) / 255f);
     }
 
     public void cellChemicalIO(float delta, Cell e) {
@@ -172,86 +227,195 @@ public class ChemicalSolution implements Serializable {
         float worldX = protozoan.getPos().x;
         float worldY = -protozoan.getPos().y;
 
-        int size = toChemicalGridXDist(protozoan.getRadius());
         int x = toChemicalGridX(worldX);
         int y = toChemicalGridY(worldY);
+        CircleStamp stamp = CircleStamp.coverage(
+                protozoan.getRadius() * cellSizeX,
+                (worldX - xMin) * cellSizeX - x,
+                (worldY - yMin) * cellSizeY - y);
+
+        float extractionRate = Environment.settings.cell.chemicalExtractionFactor.get() * delta;
+        float plantConversion = Environment.settings.cell.chemicalExtractionPlantConversion.get();
+        float meatConversion = Environment.settings.cell.chemicalExtractionMeatConversion.get();
+
+        for (int j = -stamp.radius; j <= stamp.radius; j++) {
+            int fieldY = y + j;
+            if (fieldY < 0 || fieldY >= chemicalTextureHeight)
+                continue;
+            int halfWidth = stamp.rowHalfWidths[j + stamp.radius];
+            for (int i = Math.max(-halfWidth, -x); i <= halfWidth && x + i < chemicalTextureWidth; i++) {
+                float extraction = extractionRate * stamp.coverage(i, j);
+                if (extraction <= 0)
+                    continue;
 
-        float cellWorldWidth = getFieldWidth() / chemicalTextureWidth;
-        float cellWorldHeight = getFieldHeight() / chemicalTextureHeight;
-
-        for (int i = -size; i <= size; i++) {
-            for (int j = -size; j <= size; j++) {
-                if (i*i + j*j <= size*size) {
-                    int fieldX = x + i;
-                    int fieldY = y + j;
-
-                    if (fieldX >= 0 && fieldX < chemicalTextureWidth &&
-                            fieldY >= 0 && fieldY < chemicalTextureHeight) {
-                        Colour colour = colours[fieldX][fieldY];
-
-                        float cellX = xMin + fieldX * cellWorldWidth;
-                        float cellY = yMin + fieldY * cellWorldHeight;
-
-                        float overlapArea = Geometry.boxAndCircleIntersectionOverlap(
-                                cellX, cellX + cellWorldWidth,  cellY, cellY + cellWorldHeight,
-                                worldX, worldY, protozoan.getRadius()
-                        );
-                        float overlapP = overlapArea / (cellWorldWidth * cellWorldHeight);
-                        float extraction =
-                                Environment.settings.cell.chemicalExtractionFactor.get() * delta * overlapP;
-                        if (extraction > 0) {
-
-                            if (colour.g > 0.5f && colour.g > 1.5f * colour.r && colour.g > 1.5f * colour.b)
-                                protozoan.addFood(Food.Type.Plant,
-                                        extraction * colour.g * colour.g
-                                                * Environment.settings.cell.chemicalExtractionPlantConversion.get());
-
-                            if (colour.r > 0.5f && colour.r > 1.5f * colour.g && colour.r > 1.5f * colour.b)
-                                protozoan.addFood(Food.Type.Meat,
-                                        extraction * colour.r * colour.r
-                                                * Environment.settings.cell.chemicalExtractionMeatConversion.get());
-
-                            colour.sub(extraction);
-                            set(fieldX, fieldY, colour);
-                        }
-                    }
-                }
+                int fieldX = x + i;
+                int idx = toIndex(fieldX, fieldY);
+                float r = red[idx], g = green[idx], b = blue[idx], a = alpha[idx];
+                if (r <= 0 && g <= 0 && b <= 0 && a <= 0)
+                    continue;
+
+                if (g > 0.5f && g > 1.5f * r && g > 1.5f * b)
+                    protozoan.addFood(Food.Type.Plant, extraction * g * g * plantConversion);
+
+                if (r > 0.5f && r > 1.5f * g && r > 1.5f * b)
+                    protozoan.addFood(Food.Type.Meat, extraction * r * r * meatConversion);
+
+                set(fieldX, fieldY,
+                    MathUtils.clamp(r - extraction, 0, 1), MathUtils.clamp(g - extraction, 0, 1),
+                    MathUtils.clamp(b - extraction, 0, 1), MathUtils.clamp(a - extraction, 0, 1));
             }
         }
     }
 
+    /**
+     * Applies every cell's chemical input and output. Cells are bucketed into square tiles by
+     * the texel at their centre, and the tiles are processed in four passes of a 2x2
+     * checkerboard. Tiles in the same pass are at least one tile apart and a cell's footprint
+     * reaches at most half a tile beyond its own, so within a pass no two tiles write the
+     * same texel and the tiles can run in parallel, each on a single worker. Cells too large
+     * for this are applied serially afterwards. The result does not depend on thread timing.
+     */
     public void deposit(float delta) {
-        environment.getCells().parallelStream()
-                .forEach(e -> cellChemicalIO(delta, e));
+        Cell[] cells = environment.getCells().toArray(new Cell[0]);
+        int nTiles = tilesX * tilesY;
+
+        // counting sort of the cells by tile, with oversized cells in an extra bucket at the end
+        int[] cellTiles = new int[cells.length];
+        int[] tileStarts = new int[nTiles + 2];
+        for (int c = 0; c < cells.length; c++) {
+            cellTiles[c] = depositTile(cells[c], nTiles);
+            tileStarts[cellTiles[c] + 1]++;
+        }
+        for (int t = 0; t <= nTiles; t++)
+            tileStarts[t + 1] += tileStarts[t];
+        int[] tileCells = new int[cells.length];
+        int[] next = Arrays.copyOf(tileStarts, nTiles + 1);
+        for (int c = 0; c < cells.length; c++)
+            tileCells[next[cellTiles[c]]++] = c;
+
+        int passTilesX = (tilesX + 1) / 2, passTilesY = (tilesY + 1) / 2;
+        for (int pass = 0; pass < 4; pass++) {
+            int offsetX = pass % 2, offsetY = pass / 2;
+            IntStream.range(0, passTilesX * passTilesY).parallel().forEach(k -> {
+                int tx = 2 * (k % passTilesX) + offsetX, ty = 2 * (k / passTilesX) + offsetY;
+                if (tx >= tilesX || ty >= tilesY)
+                    return;
+                int tile = ty * tilesX + tx;
+                for (int idx = tileStarts[tile]; idx < tileStarts[tile + 1]; idx++)
+                    cellChemicalIO(delta, cells[tileCells[idx]]);
+            });
+        }
+
+        for (int idx = tileStarts[nTiles]; idx < tileStarts[nTiles + 1]; idx++)
+            cellChemicalIO(delta, cells[tileCells[idx]]);
     }
 
+    private int depositTile(Cell cell, int oversizedTile) {
+        if (2 * toChemicalGridXDist(cell.getRadius()) > TILE_SIZE)
+            return oversizedTile;
+        int x = Math.min(chemicalTextureWidth - 1, toChemicalGridX(cell.getPos().x));
+        int y = Math.min(chemicalTextureHeight - 1, toChemicalGridY(-cell.getPos().y));
+        return toTile(x, y);
+    }
+
+    /**
+     * Copies the tiles the GPU kernels need into the byte buffer: the tiles that will be
+     * diffused and the ring of tiles around them that the stencil reads from.
+     */
     private void loadIntoByteBuffer() {
-        IntStream.range(0, chemicalTextureWidth * chemicalTextureHeight).parallel()
-                .forEach(i -> {
-                    int x = i % chemicalTextureWidth;
-                    int y = i / chemicalTextureWidth;
-                    int colourRGBA8888 = colours[x][y].getRGBA8888();
-
-                    byteBuffer[4*i] = (byte) ((colourRGBA8888 & 0xff000000) >>> 24);
-                    byteBuffer[4*i + 1] = (byte) ((colourRGBA8888 & 0x00ff0000) >>> 16);
-                    byteBuffer[4*i + 2] = (byte) ((colourRGBA8888 & 0x0000ff00) >>> 8);
-                    byteBuffer[4*i + 3] = (byte) ((colourRGBA8888 & 0x000000ff));
-                });
+        selectTiles(diffusedTiles, 1);
+        selectTiles(loadedTiles, 2);
+        IntStream.range(0, tilesY).parallel().forEach(ty -> {
+            int yStart = ty * TILE_SIZE, yEnd = Math.min(chemicalTextureHeight, yStart + TILE_SIZE);
+            for (int tx = 0; tx < tilesX; tx++) {
+                if (!loadedTiles[ty * tilesX + tx])
+                    continue;
+                int xStart = tx * TILE_SIZE, xEnd = Math.min(chemicalTextureWidth, xStart + TILE_SIZE);
+                for (int y = yStart; y < yEnd; y++) {
+                    for (int i = toIndex(xStart, y); i < toIndex(xEnd, y); i++) {
+                        byteBuffer[4*i] = (byte) (MathUtils.clamp(red[i], 0, 1) * 255);
+                        byteBuffer[4*i + 1] = (byte) (MathUtils.clamp(green[i], 0, 1) * 255);
+                        byteBuffer[4*i + 2] = (byte) (MathUtils.clamp(blue[i], 0, 1) * 255);
+                        byteBuffer[4*i + 3] = (byte) (MathUtils.clamp(alpha[i], 0, 1) * 255);
+                    }
+                }
+            }
+        });
     }
 
+    /**
+     * Copies the diffused tiles out of the byte buffer into the next buffers.
+     */
     private void unloadFromByteBuffer() {
-        IntStream.range(0, chemicalTextureWidth * chemicalTextureHeight).parallel()
-                .forEach(i -> {
-                    int x = i % chemicalTextureWidth;
-                    int y = i / chemicalTextureWidth;
-                    int r = byteBuffer[4*i] & 0xFF;
-                    int g = byteBuffer[4*i + 1] & 0xFF;
-                    int b = byteBuffer[4*i + 2] & 0xFF;
-                    int a = byteBuffer[4*i + 3] & 0xFF;
-                    int colour = (r << 24) | (g << 16) | (b << 8) | a;
-
-                    set(x, y, colour);
-                });
+        IntStream.range(0, tilesY).parallel().forEach(ty -> {
+            int yStart = ty * TILE_SIZE, yEnd = Math.min(chemicalTextureHeight, yStart + TILE_SIZE);
+            for (int tx = 0; tx < tilesX; tx++) {
+                if (!diffusedTiles[ty * tilesX + tx])
+                    continue;
+                int xStart = tx * TILE_SIZE, xEnd = Math.min(chemicalTextureWidth, xStart + TILE_SIZE);
+                for (int y = yStart; y < yEnd; y++) {
+                    for (int i = toIndex(xStart, y); i < toIndex(xEnd, y); i++) {
+                        nextRed[i] = (byteBuffer[4*i] & 0xFF) / 255f;
+                        nextGreen[i] = (byteBuffer[4*i + 1] & 0xFF) / 255f;
+                        nextBlue[i] = (byteBuffer[4*i + 2] & 0xFF) / 255f;
+                        nextAlpha[i] = (byteBuffer[4*i + 3] & 0xFF) / 255f;
+                    }
+                }
+            }
+            finishTileRow(ty);
+        });
+    }
+
+    /**
+     * Marks every tile within the given number of tiles of a live tile.
+     */
+    private void selectTiles(boolean[] selected, int halo) {
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                boolean select = false;
+                for (int dy = Math.max(0, ty - halo); dy <= Math.min(tilesY - 1, ty + halo) && !select; dy++)
+                    for (int dx = Math.max(0, tx - halo); dx <= Math.min(tilesX - 1, tx + halo) && !select; dx++)
+                        select = liveTiles[dy * tilesX + dx];
+                selected[ty * tilesX + tx] = select;
+            }
+        }
+    }
+
+    /**
+     * Once a row of tiles has been diffused into the next buffers, records which of them
+     * are live and clears the tiles that were skipped. A skipped tile held no visible
+     * chemicals and neither did its neighbours, so diffusion would only have left a faint
+     * residue below the alpha cutoff. It takes two passes to clear both buffers, after which
+     * the tile is left alone until something is deposited in it.
+     */
+    private void finishTileRow(int ty) {
+        int yStart = ty * TILE_SIZE, yEnd = Math.min(chemicalTextureHeight, yStart + TILE_SIZE);
+        for (int tx = 0; tx < tilesX; tx++) {
+            int tile = ty * tilesX + tx;
+            int xStart = tx * TILE_SIZE, xEnd = Math.min(chemicalTextureWidth, xStart + TILE_SIZE);
+            if (diffusedTiles[tile]) {
+                boolean live = false;
+                for (int y = yStart; y < yEnd && !live; y++)
+                    for (int i = toIndex(xStart, y); i < toIndex(xEnd, y) && !live; i++)
+                        live = nextAlpha[i] >= DiffusionStencil.MIN_ALPHA;
+                nextLiveTiles[tile] = live;
+                clearedBuffers[tile] = 0;
+                changedTiles[tile] = true;
+            } else {
+                nextLiveTiles[tile] = false;
+                changedTiles[tile] = clearedBuffers[tile] < 2;
+                if (changedTiles[tile]) {
+                    for (int y = yStart; y < yEnd; y++) {
+                        int from = toIndex(xStart, y), to = toIndex(xEnd, y);
+                        Arrays.fill(nextRed, from, to, 0f);
+                        Arrays.fill(nextGreen, from, to, 0f);
+                        Arrays.fill(nextBlue, from, to, 0f);
+                        Arrays.fill(nextAlpha, from, to, 0f);
+                    }
+                    clearedBuffers[tile]++;
+                }
+            }
+        }
     }
 
     private void cudaDiffuse() {
@@ -289,87 +453,50 @@ public class ChemicalSolution implements Serializable {
         unloadFromByteBuffer();
     }
 
-    private void diffuseAt(int x, int y) {
-
-        // See voidStartDistance in SimulationSettings
-        float world_radius = Environment.settings.worldgen.voidStartDistance.get();
-
-        int width = this.chemicalTextureWidth;
-        int height = this.chemicalTextureHeight;
-        float cellSizeX = 2 * world_radius / ((float) width);
-        float cellSizeY = 2 * world_radius / ((float) height);
-        float world_x = -world_radius + cellSizeX * x;
-        float world_y = -world_radius + cellSizeY * y;
-        float dist2_to_world_centre = world_x*world_x + world_y*world_y;
-
-        // set alpha decay to zero as we approach the void
-        float decay;
-
-        float void_p = 0.9f;
-        if (dist2_to_world_centre > void_p * void_p * world_radius * world_radius) {
-            float dist_to_world_centre = (float) Math.sqrt(dist2_to_world_centre);
-            // lerp from 1.0 to 0.0 for distance between void_p*world_radius and world_radius
-            decay = 0.9995f * (1.0f - (dist_to_world_centre - void_p * world_radius) / ((1.0f - void_p) * world_radius));
-            if (decay < 0.0) {
-                decay = 0.0f;
-            }
-        } else {
-            decay = 0.9995f;
-        }
-        int channels = 4;
-        int FILTER_SIZE = 3;
-        float final_alpha = 0.0f;
-        int radius = (FILTER_SIZE - 1) / 2;
-
-        Colour newColour = new Colour();
-        for (int i = -radius; i <= radius; i++) {
-            for (int j = -radius; j <= radius; j++) {
-                int x_ = x + i, y_ = y + j;
-                if (x_ < 0 || x_ >= width || y_ < 0 || y_ >= height) {
-                    continue;
-                }
-                final_alpha += colours[x_][y_].a;
-            }
-        }
-        final_alpha = decay * final_alpha / ((float) (FILTER_SIZE*FILTER_SIZE));
-        newColour.a = final_alpha;
-
-        if (final_alpha < 5.0 / 255.0) {
-            return;
-        }
-
-        float[] tmp = new float[channels - 1];
-        for (int i = -radius; i <= radius; i++) {
-            for (int j = -radius; j <= radius; j++) {
-                int x_ = x + i, y_ = y + j;
-                if (x_ < 0 || x_ >= width || y_ < 0 || y_ >= height) {
+    /**
+     * Diffuses the live tiles and their neighbours on the CPU, processing each row of tiles
+     * in parallel. Uses the Vector API stencil when enabled and available, otherwise the
+     * scalar one. Reads the current channels and writes the next buffers.
+     */
+    public void cpuDiffuse() {
+        int width = chemicalTextureWidth, height = chemicalTextureHeight;
+        boolean useVectorDiffusion = Environment.settings.misc.useVectorDiffusion.get()
+                && DiffusionStencil.VECTOR_API_AVAILABLE;
+        selectTiles(diffusedTiles, 1);
+        IntStream.range(0, tilesY).parallel().forEach(ty -> {
+            int yStart = ty * TILE_SIZE;
+            int yEnd = Math.min(height, yStart + TILE_SIZE);
+            int tx = 0;
+            while (tx < tilesX) {
+                if (!diffusedTiles[ty * tilesX + tx]) {
+                    tx++;
                     continue;
                 }
-                Colour pixel = colours[x_][y_];
-                tmp[0] += decay * pixel.r * pixel.a;
-                tmp[1] += decay * pixel.g * pixel.a;
-                tmp[2] += decay * pixel.b * pixel.a;
+                // diffuse runs of adjacent tiles together
+                int xStart = tx * TILE_SIZE;
+                while (tx < tilesX && diffusedTiles[ty * tilesX + tx])
+                    tx++;
+                int xEnd = Math.min(width, tx * TILE_SIZE);
+                if (useVectorDiffusion)
+                    VectorDiffusionStencil.diffuseRegion(
+                            red, green, blue, alpha,
+                            nextRed, nextGreen, nextBlue, nextAlpha,
+                            decayField, width, height, xStart, xEnd, yStart, yEnd);
+                else
+                    DiffusionStencil.diffuseRegion(
+                            red, green, blue, alpha,
+                            nextRed, nextGreen, nextBlue, nextAlpha,
+                            decayField, width, height, xStart, xEnd, yStart, yEnd);
             }
-            tmp[0] = tmp[0] / ((float) (FILTER_SIZE*FILTER_SIZE)) * decay / final_alpha;
-            tmp[1] = tmp[1] / ((float) (FILTER_SIZE*FILTER_SIZE)) * decay / final_alpha;
-            tmp[2] = tmp[2] / ((float) (FILTER_SIZE*FILTER_SIZE)) * decay / final_alpha;
-        }
-        newColour.r = tmp[0];
-        newColour.g = tmp[1];
-        newColour.b = tmp[2];
-
-        set(x, y, newColour);
-    }
-
-    public void cpuDiffuse() {
-        for (int sample = 0; sample < Environment.settings.misc.chemicalCPUIterations.get(); sample++) {
-            int i = MathUtils.random(chemicalTextureWidth * chemicalTextureHeight);
-            int x = i % chemicalTextureWidth;
-            int y = i / chemicalTextureWidth;
-            diffuseAt(x, y);
-        }
+            finishTileRow(ty);
+        });
     }
 
+    /**
+     * Computes the next state of the field into the back buffers. The current channels are
+     * only read, so other phases may read the field while this runs;
+     * {@link #swapDiffusedField()} makes the result visible.
+     */
     public void diffuse() {
         if (Environment.settings.misc.useCUDA.get())
             cudaDiffuse();
@@ -377,9 +504,75 @@ public class ChemicalSolution implements Serializable {
             openGLDiffuse();
         else
             cpuDiffuse();
+        hasDiffused = true;
+    }
+
+    /**
+     * Makes the field computed by {@link #diffuse()} visible and brings the density pyramid
+     * up to date with it, so the pyramid is only ever written here and can be read freely
+     * by the phases that follow.
+     */
+    public void swapDiffusedField() {
+        if (hasDiffused)
+            swapBuffers();
+        if (initialised && pyramidStale)
+            updateDensityPyramid();
+    }
+
+    private void swapBuffers() {
+        float[] tmp = red; red = nextRed; nextRed = tmp;
+        tmp = green; green = nextGreen; nextGreen = tmp;
+        tmp = blue; blue = nextBlue; nextBlue = tmp;
+        tmp = alpha; alpha = nextAlpha; nextAlpha = tmp;
+        boolean[] tmpTiles = liveTiles; liveTiles = nextLiveTiles; nextLiveTiles = tmpTiles;
+        hasDiffused = false;
+
+        for (int tile = 0; tile < changedTiles.length; tile++) {
+            if (changedTiles[tile]) {
+                dirtyTiles[tile] = true;
+                pyramidDirtyTiles[tile] = true;
+            }
+        }
+        pyramidStale = true;
+    }
+
+    /**
+     * Packs the texels of every tile that has changed since the last call into an RGBA8888
+     * buffer laid out like the field, such as a {@link com.badlogic.gdx.graphics.Pixmap}'s
+     * pixels, then marks those tiles clean. Each tile is marked clean before it is copied,
+     * so a tile changed by the simulation during the copy is copied again next time.
+     *
+     * @return whether any texels were copied
+     */
+    public boolean copyDirtyTiles(ByteBuffer pixels) {
+        if (!initialised)
+            return false;
+
+        ByteBuffer rgba = pixels.duplicate().order(ByteOrder.BIG_ENDIAN);
+        boolean copied = false;
+        for (int tile = 0; tile < dirtyTiles.length; tile++) {
+            if (!dirtyTiles[tile])
+                continue;
+            dirtyTiles[tile] = false;
+            copied = true;
+
+            int xStart = (tile % tilesX) * TILE_SIZE, yStart = (tile / tilesX) * TILE_SIZE;
+            int xEnd = Math.min(chemicalTextureWidth, xStart + TILE_SIZE);
+            int yEnd = Math.min(chemicalTextureHeight, yStart + TILE_SIZE);
+            for (int y = yStart; y < yEnd; y++)
+                for (int i = toIndex(xStart, y); i < toIndex(xEnd, y); i++)
+                    rgba.putInt(4 * i, getRGBA8888(i));
+        }
+        return copied;
     }
 
     public void update(float delta) {
+        updateDiffusion(delta);
+        swapDiffusedField();
+        deposit(delta);
+    }
+
+    public void updateDiffusion(float delta) {
         if (!initialised) {
             initialise();
         }
@@ -389,15 +582,11 @@ public class ChemicalSolution implements Serializable {
             diffuse();
             timeSinceUpdate = 0;
         }
-        deposit(delta);
     }
 
-    public Colour[][] getImage() {
-        if (!initialised) {
-            initialise();
-        }
-
-        return colours;
+    public static boolean requiresSimulationThread() {
+        return Environment.settings.misc.useCUDA.get()
+                || Environment.settings.misc.useOpenGLComputeShader.get();
     }
 
     public int getNYCells() {
@@ -426,16 +615,135 @@ public class ChemicalSolution implements Serializable {
 
     public float getDensity(float x, float y, int axis) {
         int i = toChemicalGridX(x);
-        int j = toChemicalGridY(y);
+        int j = toChemicalGridY(-y);
         return getDensity(i, j, axis);
     }
 
+    /**
+     * Samples the density at the given world position, averaged over roughly the given
+     * distance. The sample is read from the level of the density pyramid whose texels are
+     * closest to that size, so the cost does not depend on the scale.
+     */
+    public float getDensity(float x, float y, int axis, float scale) {
+        if (!initialised)
+            return 0;
+        return sampleDensity(x, y, axis, getPyramidLevel(scale));
+    }
+
+    /**
+     * Computes the gradient of the density at the given world position from central
+     * differences over the given distance, using samples averaged over that distance.
+     *
+     * @param out the vector the gradient (change in density per unit distance) is written to
+     * @return the out vector
+     */
+    public Vector2 getDensityGradient(float x, float y, int axis, float scale, Vector2 out) {
+        if (!initialised)
+            return out.setZero();
+        int level = getPyramidLevel(scale);
+        float dx = sampleDensity(x + scale, y, axis, level) - sampleDensity(x - scale, y, axis, level);
+        float dy = sampleDensity(x, y + scale, axis, level) - sampleDensity(x, y - scale, axis, level);
+        return out.set(dx, dy).scl(0.5f / scale);
+    }
+
+    public Vector2 getPlantGradient(float x, float y, float scale, Vector2 out) {
+        return getDensityGradient(x, y, 1, scale, out);
+    }
+
+    public Vector2 getMeatGradient(float x, float y, float scale, Vector2 out) {
+        return getDensityGradient(x, y, 0, scale, out);
+    }
+
+    private int getPyramidLevel(float scale) {
+        int texels = (int) (scale * cellSizeX);
+        if (texels <= 1)
+            return 0;
+        int level = 31 - Integer.numberOfLeadingZeros(texels);
+        return Math.min(level, densityPyramid.getLevelCount() - 1);
+    }
+
+    /**
+     * Bilinearly interpolates the density at the given world position on a pyramid level.
+     */
+    private float sampleDensity(float x, float y, int axis, int level) {
+        int width = densityPyramid.getWidth(level), height = densityPyramid.getHeight(level);
+        float levelScale = 1f / (1 << level);
+        float gx = (x - xMin) * cellSizeX * levelScale - 0.5f;
+        float gy = (-y - yMin) * cellSizeY * levelScale - 0.5f;
+        int x0 = MathUtils.floor(gx), y0 = MathUtils.floor(gy);
+        float tx = gx - x0, ty = gy - y0;
+        int x1 = MathUtils.clamp(x0 + 1, 0, width - 1), y1 = MathUtils.clamp(y0 + 1, 0, height - 1);
+        x0 = MathUtils.clamp(x0, 0, width - 1);
+        y0 = MathUtils.clamp(y0, 0, height - 1);
+
+        float d00 = levelDensity(level, axis, x0, y0), d10 = levelDensity(level, axis, x1, y0);
+        float d01 = levelDensity(level, axis, x0, y1), d11 = levelDensity(level, axis, x1, y1);
+        return MathUtils.lerp(MathUtils.lerp(d00, d10, tx), MathUtils.lerp(d01, d11, tx), ty);
+    }
+
+    private float levelDensity(int level, int axis, int x, int y) {
+        if (level == 0)
+            return getDensity(x, y, axis);
+        return densityPyramid.get(level, axis, x, y);
+    }
+
+    /**
+     * Updates the pyramid over the tiles changed since it was last built. Levels that fit
+     * within a tile are rebuilt tile by tile in parallel; the few coarser levels are then
+     * rebuilt over the changed region.
+     */
+    private void updateDensityPyramid() {
+        int tileLevels = Integer.numberOfTrailingZeros(TILE_SIZE);
+        IntStream.range(0, pyramidDirtyTiles.length).parallel()
+                .filter(tile -> pyramidDirtyTiles[tile])
+                .forEach(tile -> {
+                    int x0 = (tile % tilesX) * TILE_SIZE, y0 = (tile / tilesX) * TILE_SIZE;
+                    densityPyramid.update(red, green, blue, alpha,
+                            x0, Math.min(chemicalTextureWidth, x0 + TILE_SIZE),
+                            y0, Math.min(chemicalTextureHeight, y0 + TILE_SIZE),
+                            0, tileLevels);
+                });
+
+        int minTx = tilesX, maxTx = -1, minTy = tilesY, maxTy = -1;
+        for (int tile = 0; tile < pyramidDirtyTiles.length; tile++) {
+            if (!pyramidDirtyTiles[tile])
+                continue;
+            pyramidDirtyTiles[tile] = false;
+            minTx = Math.min(minTx, tile % tilesX);
+            maxTx = Math.max(maxTx, tile % tilesX);
+            minTy = Math.min(minTy, tile / tilesX);
+            maxTy = Math.max(maxTy, tile / tilesX);
+        }
+        if (maxTx >= 0) {
+            // levels up to tileLevels are already up to date, so this only rebuilds coarser ones
+            densityPyramid.update(red, green, blue, alpha,
+                    minTx * TILE_SIZE, Math.min(chemicalTextureWidth, (maxTx + 1) * TILE_SIZE),
+                    minTy * TILE_SIZE, Math.min(chemicalTextureHeight, (maxTy + 1) * TILE_SIZE),
+                    tileLevels, densityPyramid.getLevelCount() - 1);
+        }
+        pyramidStale = false;
+    }
+
     public float getDensity(int i, int j, int axis) {
         if (i < 0 || i >= chemicalTextureWidth || j < 0 || j >= chemicalTextureHeight)
             return 0;
-;
-        Colour c = colours[i][j];
-        return c.get(axis) * c.a;
+        int idx = toIndex(i, j);
+        return getChannel(axis)[idx] * alpha[idx];
+    }
+
+    private float[] getChannel(int axis) {
+        switch (axis) {
+            case 0:
+                return red;
+            case 1:
+                return green;
+            case 2:
+                return blue;
+            case 3:
+                return alpha;
+            default:
+                throw new RuntimeException("Invalid axis " + axis);
+        }
     }
 
     public float getMinX() {
@@ -455,29 +763,38 @@ public class ChemicalSolution implements Serializable {
     }
 
     public void depositCircle(Vector2 pos, float r, Colour c) {
-        int x = toChemicalGridX(pos.x);
-        int y = toChemicalGridY(-pos.y);
-        int rc = toChemicalGridXDist(r);
-        for (int i = -rc; i <= rc; i++) {
-            for (int j = -rc; j <= rc; j++) {
-                if (i*i + j*j > rc*rc)
-                    continue;
-                int x_ = x + i, y_ = y + j;
-                set(x_, y_, c);
-            }
-        }
+        depositCircle(pos, r,
+            MathUtils.clamp(c.r, 0, 1), MathUtils.clamp(c.g, 0, 1),
+            MathUtils.clamp(c.b, 0, 1), MathUtils.clamp(c.a, 0, 1));
     }
 
+    /**
+     * Sets every texel in the circle's footprint to the given colour, filling the footprint
+     * one contiguous row span at a time.
+     */
     public void depositCircle(Vector2 pos, float rad, float r, float g, float b, float a) {
         int x = toChemicalGridX(pos.x);
         int y = toChemicalGridY(-pos.y);
         int rc = toChemicalGridXDist(rad);
-        for (int i = -rc; i <= rc; i++) {
-            for (int j = -rc; j <= rc; j++) {
-                if (i*i + j*j > rc*rc)
-                    continue;
-                int x_ = x + i, y_ = y + j;
-                set(x_, y_, r, g, b, a);
+        int[] rowHalfWidths = CircleStamp.footprint(rc);
+        for (int j = -rc; j <= rc; j++) {
+            int y_ = y + j;
+            if (y_ < 0 || y_ >= chemicalTextureHeight)
+                continue;
+            int halfWidth = rowHalfWidths[j + rc];
+            int xStart = Math.max(0, x - halfWidth);
+            int xEnd = Math.min(chemicalTextureWidth, x + halfWidth + 1);
+            if (xStart >= xEnd)
+                continue;
+
+            int row = toIndex(0, y_);
+            Arrays.fill(red, row + xStart, row + xEnd, r);
+            Arrays.fill(green, row + xStart, row + xEnd, g);
+            Arrays.fill(blue, row + xStart, row + xEnd, b);
+            Arrays.fill(alpha, row + xStart, row + xEnd, a);
+            for (int tx = xStart / TILE_SIZE; tx <= (xEnd - 1) / TILE_SIZE; tx++) {
+                liveTiles[(y_ / TILE_SIZE) * tilesX + tx] = true;
+                dirtyTiles[(y_ / TILE_SIZE) * tilesX + tx] = true;
             }
         }
     }
@@ -486,13 +803,20 @@ public class ChemicalSolution implements Serializable {
         return (getMaxX() - getMinX()) / getNXCells();
     }
 
+    /**
+     * @return a copy of the colour at the given world position
+     */
     public Colour getColour(float x, float y) {
         int gridX = toChemicalGridX(x);
-        int gridY = toChemicalGridY(y);
-        return colours[gridX][gridY];
+        int gridY = toChemicalGridY(-y);
+        return getColour(gridX, gridY);
     }
 
+    /**
+     * @return a copy of the colour of the given texel
+     */
     public Colour getColour(int i, int j) {
-        return colours[i][j];
+        int idx = toIndex(i, j);
+        return new Colour().set(red[idx], green[idx], blue[idx], alpha[idx]);
     }
 }
@@ -5,38 +5,267 @@ import com.protoevo.biology.cells.Cell;
 import com.protoevo.biology.cells.MeatCell;
 import com.protoevo.biology.cells.PlantCell;
 import com.protoevo.biology.cells.Protozoan;
-import com.protoevo.physics.SpatialHash;
+import com.protoevo.physics.UniformGrid;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Chunks implements Serializable {
     public static final long serialVersionUID = 1L;
 
-    private ConcurrentHashMap<Class<? extends Cell>, SpatialHash<Cell>> cellHashes;
-    private ConcurrentHashMap<Class<? extends Cell>, Integer> globalCellCounts;
+    private ConcurrentHashMap<Class<? extends Cell>, UniformGrid<Cell>> cellHashes;
+    private ConcurrentHashMap<Class<? extends Cell>, UniformGrid<Cell>> pendingCellHashes;
+    private List<Cell> pendingCells;
+    private int pendingRefreshedUpTo;
+    private UniformGrid<Rock> rockIndex;
 
     public void initialise() {
         cellHashes = new ConcurrentHashMap<>(3, 1);
-        globalCellCounts = new ConcurrentHashMap<>(3, 1);
+        pendingCellHashes = new ConcurrentHashMap<>(3, 1);
+        pendingCells = new ArrayList<>();
+        pendingRefreshedUpTo = 0;
 
         int resolution = Environment.settings.misc.spatialHashResolution.get();
         int protozoaLocalCap = Environment.settings.misc.protozoaLocalCap.get();
         int plantLocalCap = Environment.settings.misc.plantLocalCap.get();
         int meatLocalCap = Environment.settings.misc.meatLocalCap.get();
         float hashRadius = 1.5f * Environment.settings.worldgen.radius.get();
-        cellHashes.put(Protozoan.class, new SpatialHash<>(resolution, protozoaLocalCap, hashRadius));
-        cellHashes.put(PlantCell.class, new SpatialHash<>(resolution, plantLocalCap, hashRadius));
-        cellHashes.put(MeatCell.class, new SpatialHash<>(resolution, meatLocalCap, hashRadius));
+        cellHashes.put(Protozoan.class, createCellHash(resolution, protozoaLocalCap, hashRadius));
+        cellHashes.put(PlantCell.class, createCellHash(resolution, plantLocalCap, hashRadius));
+        cellHashes.put(MeatCell.class, createCellHash(resolution, meatLocalCap, hashRadius));
+        for (Class<? extends Cell> cellClass : cellHashes.keySet())
+            pendingCellHashes.put(cellClass, createCellHash(
+                    resolution, cellHashes.get(cellClass).getChunkCapacity(), hashRadius));
+        rockIndex = new UniformGrid<>(resolution, hashRadius);
+    }
+
+    private static UniformGrid<Cell> createCellHash(int resolution, int localCap, float hashRadius) {
+        // a cell is only ever in one of the hashes, so it can keep its slot alongside its chunk index
+        return new UniformGrid<>(resolution, localCap, hashRadius, Cell::getChunkSlot, Cell::setChunkSlot);
+    }
+
+    public void indexRocks(Collection<Rock> rocks) {
+        rockIndex.clear();
+        for (Rock rock : rocks) {
+            Vector2[] bounds = rock.getBoundingBox();
+            rockIndex.addToBox(rock,
+                    Math.min(bounds[0].x, bounds[1].x), Math.min(bounds[0].y, bounds[1].y),
+                    Math.max(bounds[0].x, bounds[1].x), Math.max(bounds[0].y, bounds[1].y));
+        }
+    }
+
+    /**
+     * Tracks a cell that has been registered to be added to the environment at the end of the tick,
+     * so that it is visible to spatial queries before then.
+     * <br>
+     * The pending cells are owned by the Births and Deaths phase (and world generation before the
+     * first tick): only it adds, re-allocates, refreshes or clears them. Every other phase,
+     * including the parallel cell updates, only reads the pending hashes, which is safe as
+     * nothing writes to them concurrently.
+     */
+    public void addPending(Cell cell) {
+        int chunk = pendingCellHashes.get(cell.getClass()).add(cell, cell.getPos());
+        cell.setChunkIndex(chunk);
+        pendingCells.add(cell);
+    }
+
+    /**
+     * Re-allocates a pending cell after its position has been set.
+     */
+    public void updatePending(Cell cell) {
+        UniformGrid<Cell> hash = pendingCellHashes.get(cell.getClass());
+        int chunk = hash.getChunkIndex(cell.getPos());
+        hash.move(cell, cell.getChunkIndex(), chunk);
+        cell.setChunkIndex(chunk);
+    }
+
+    /**
+     * Newly created cells are registered before they are given their position, so the owner of
+     * the pending cells re-allocates those registered since the last refresh once they have been
+     * positioned, before anything queries them.
+     */
+    public void refreshPending() {
+        if (pendingRefreshedUpTo == pendingCells.size())
+            return;
+        for (int i = pendingRefreshedUpTo; i < pendingCells.size(); i++)
+            updatePending(pendingCells.get(i));
+        pendingRefreshedUpTo = pendingCells.size();
+    }
+
+    public int getPendingGlobalCount(Class<? extends Cell> cellClass) {
+        return pendingCellHashes.get(cellClass).size();
+    }
+
+    public int getPendingChunkCount(Class<? extends Cell> cellClass, Vector2 pos) {
+        return pendingCellHashes.get(cellClass).getCount(pos);
+    }
+
+    public void clearPending() {
+        for (Cell cell : pendingCells)
+            cell.setChunkIndex(-1);
+        pendingCells.clear();
+        pendingRefreshedUpTo = 0;
+        pendingCellHashes.values().forEach(UniformGrid::clear);
+    }
+
+    private float maxCellRadius() {
+        return Environment.settings.maxParticleRadius.get();
+    }
+
+    /**
+     * Visits every cell, including pending cells, whose centre lies within the radius of the given position.
+     */
+    public void forEachWithinRadius(Vector2 pos, float radius, Consumer<Cell> consumer) {
+        float r2 = radius * radius;
+        Consumer<Cell> withinRadius = cell -> {
+            if (cell.getPos().dst2(pos) <= r2)
+                consumer.accept(cell);
+        };
+        for (UniformGrid<Cell> hash : cellHashes.values())
+            hash.forEachInBox(pos.x - radius, pos.y - radius, pos.x + radius, pos.y + radius, withinRadius);
+        for (UniformGrid<Cell> hash : pendingCellHashes.values())
+            hash.forEachInBox(pos.x - radius, pos.y - radius, pos.x + radius, pos.y + radius, withinRadius);
+    }
+
+    /**
+     * Visits every cell, excluding pending cells, allocated to a chunk overlapping the box.
+     */
+    public void forEachCellInBox(float minX, float minY, float maxX, float maxY, Consumer<Cell> consumer) {
+        for (UniformGrid<Cell> hash : cellHashes.values())
+            hash.forEachInBox(minX, minY, maxX, maxY, consumer);
+    }
+
+    /**
+     * Visits every rock overlapping a chunk that overlaps the box. Rocks spanning several
+     * chunks may be visited more than once.
+     */
+    public void forEachRockInBox(float minX, float minY, float maxX, float maxY, Consumer<Rock> consumer) {
+        rockIndex.forEachInBox(minX, minY, maxX, maxY, consumer);
+    }
+
+    /**
+     * @return any cell, including pending cells, that overlaps the circle with the given position and radius
+     */
+    public Optional<Cell> anyOverlapping(Vector2 pos, float r) {
+        float range = r + maxCellRadius();
+        Environment.DoCirclesCollidePredicate collides = new Environment.DoCirclesCollidePredicate(pos, r);
+        for (UniformGrid<Cell> hash : cellHashes.values()) {
+            Cell cell = hash.findInBox(pos.x - range, pos.y - range, pos.x + range, pos.y + range, collides);
+            if (cell != null)
+                return Optional.of(cell);
+        }
+        for (UniformGrid<Cell> hash : pendingCellHashes.values()) {
+            Cell cell = hash.findInBox(pos.x - range, pos.y - range, pos.x + range, pos.y + range, collides);
+            if (cell != null)
+                return Optional.of(cell);
+        }
+        return Optional.empty();
+    }
+
+    public Optional<Rock> anyOverlappingRock(Vector2 pos, float r) {
+        return Optional.ofNullable(rockIndex.findInBox(
+                pos.x - r, pos.y - r, pos.x + r, pos.y + r,
+                new Environment.RockCollisionWithParticlePredicate(pos, r)));
+    }
+
+    public List<Cell> kNearest(Vector2 pos, int k) {
+        return kNearest(pos, k, cellHashes.values());
+    }
+
+    public List<Cell> kNearest(Vector2 pos, int k, Class<? extends Cell> cellType) {
+        return kNearest(pos, k, Collections.singletonList(cellHashes.get(cellType)));
+    }
+
+    /**
+     * Searches rings of chunks outwards from the chunk containing the position, stopping once
+     * no unvisited chunk can contain a cell closer than the current k-th nearest.
+     *
+     * @return up to k cells ordered from nearest to furthest
+     */
+    private List<Cell> kNearest(Vector2 pos, int k, Collection<UniformGrid<Cell>> hashes) {
+        if (k <= 0)
+            return Collections.emptyList();
+
+        PriorityQueue<Cell> nearest = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble((Cell cell) -> cell.getPos().dst2(pos)).reversed());
+
+        UniformGrid<Cell> grid = cellHashes.get(Protozoan.class);
+        int resolution = grid.getResolution();
+        int ci = grid.getChunkX(pos.x), cj = grid.getChunkY(pos.y);
+        for (int ring = 0; ring < resolution; ring++) {
+            for (int i = ci - ring; i <= ci + ring; i++) {
+                if (i < 0 || i >= resolution)
+                    continue;
+                boolean edgeColumn = i == ci - ring || i == ci + ring;
+                int jStep = edgeColumn ? 1 : 2 * ring;
+                for (int j = cj - ring; j <= cj + ring; j += Math.max(jStep, 1)) {
+                    if (j < 0 || j >= resolution)
+                        continue;
+                    int chunk = grid.getChunkIndex(i, j);
+                    for (UniformGrid<Cell> hash : hashes) {
+                        int count = hash.getCount(chunk);
+                        for (int idx = 0; idx < count; idx++) {
+                            nearest.add(hash.get(chunk, idx));
+                            if (nearest.size() > k)
+                                nearest.poll();
+                        }
+                    }
+                }
+            }
+            if (nearest.size() == k) {
+                float reach = ring * grid.getChunkSize();
+                if (nearest.peek().getPos().dst2(pos) <= reach * reach)
+                    break;
+            }
+        }
+
+        List<Cell> result = new ArrayList<>(nearest);
+        result.sort(Comparator.comparingDouble(cell -> cell.getPos().dst2(pos)));
+        return result;
     }
 
     public void add(Cell cell) {
-        cellHashes.get(cell.getClass()).add(cell, cell.getPos());
+        if (cell.getChunkIndex() >= 0) {
+            update(cell);
+            return;
+        }
+        int chunk = cellHashes.get(cell.getClass()).add(cell, cell.getPos());
+        cell.setChunkIndex(chunk);
+    }
+
+    public void remove(Cell cell) {
+        if (cell.getChunkIndex() < 0)
+            return;
+        cellHashes.get(cell.getClass()).remove(cell, cell.getChunkIndex());
+        cell.setChunkIndex(-1);
+    }
+
+    /**
+     * Moves the cell to a new chunk if it has crossed a chunk boundary since it was last allocated.
+     */
+    public void update(Cell cell) {
+        UniformGrid<Cell> hash = cellHashes.get(cell.getClass());
+        int chunk = hash.getChunkIndex(cell.getPos());
+        int currentChunk = cell.getChunkIndex();
+        if (chunk == currentChunk)
+            return;
+        if (currentChunk < 0)
+            hash.insert(cell, chunk);
+        else
+            hash.move(cell, currentChunk, chunk);
+        cell.setChunkIndex(chunk);
+    }
+
+    public void rebuild(Collection<Cell> cells) {
+        clear();
+        for (Cell cell : cells) {
+            cell.setChunkIndex(-1);
+            add(cell);
+        }
     }
 
     public int getLocalCount(Class<? extends Cell> cellClass) {
@@ -48,13 +277,7 @@ public class Chunks implements Serializable {
     }
 
     public int getGlobalCount(Class<? extends Cell> cellClass) {
-        if (!globalCellCounts.containsKey(cellClass)) {
-            int count = getSpatialHash(cellClass).getChunkIndices().stream()
-                    .mapToInt(i -> getSpatialHash(cellClass).getCount(i))
-                    .sum();
-            globalCellCounts.put(cellClass, count);
-        }
-        return globalCellCounts.get(cellClass);
+        return cellHashes.get(cellClass).size();
     }
 
     public int getGlobalCapacity(Cell cell) {
@@ -72,15 +295,10 @@ public class Chunks implements Serializable {
     }
 
     public void clear() {
-        cellHashes.values().forEach(SpatialHash::clear);
-        globalCellCounts.clear();
-    }
-
-    public void allocate(Cell cell) {
-        cellHashes.get(cell.getClass()).add(cell, cell.getPos());
+        cellHashes.values().forEach(UniformGrid::clear);
     }
 
-    public SpatialHash<? extends Cell> getCellHash(Class<? extends Cell> cellType, Vector2 pos) {
+    public UniformGrid<? extends Cell> getCellHash(Class<? extends Cell> cellType, Vector2 pos) {
         return cellHashes.get(cellType);
     }
 
@@ -92,7 +310,7 @@ public class Chunks implements Serializable {
         return cellHashes.get(cellType).getChunkCapacity();
     }
 
-    public SpatialHash<Cell> getSpatialHash(Class<? extends Cell> clazz) {
+    public UniformGrid<Cell> getSpatialHash(Class<? extends Cell> clazz) {
         return cellHashes.get(clazz);
     }
 
@@ -103,7 +321,7 @@ public class Chunks implements Serializable {
 
     public List<Cell> getChunkCells(int i) {
         List<Cell> chunkCells = new ArrayList<>();
-        for (SpatialHash<Cell> hash : cellHashes.values()) {
+        for (UniformGrid<Cell> hash : cellHashes.values()) {
             chunkCells.addAll(hash.getChunkContents(i));
         }
         return chunkCells;
@@ -0,0 +1,97 @@
+package com.protoevo.env;
+
+import com.protoevo.maths.Geometry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed texel masks for circles drawn onto the chemical field.
+ * <br>
+ * A circle of radius r texels covers the texels (i, j) around its centre texel with
+ * {@code i*i + j*j <= floor(r)^2}. Within each row of that footprint the covered texels are
+ * contiguous, so the footprint is stored as the half-width of every row. Coverage stamps
+ * additionally hold the fraction of each texel's area that lies inside the circle. Coverage
+ * depends on where the centre falls within its texel, so stamps are cached per radius and
+ * sub-texel offset, both quantised to {@link #SUBDIVISIONS} steps per texel.
+ * <br>
+ * Texels are assumed to be square.
+ */
+final class CircleStamp {
+
+    static final int SUBDIVISIONS = 16;
+
+    private static final Map<Integer, int[]> footprints = new ConcurrentHashMap<>();
+    private static final Map<Integer, CircleStamp[]> stamps = new ConcurrentHashMap<>();
+
+    final int radius;
+    final int[] rowHalfWidths;
+    private final float[] coverage;
+
+    private CircleStamp(float radius, float offsetX, float offsetY) {
+        this.radius = (int) radius;
+        rowHalfWidths = footprint(this.radius);
+        int size = 2 * this.radius + 1;
+        coverage = new float[size * size];
+        for (int j = -this.radius; j <= this.radius; j++) {
+            int halfWidth = rowHalfWidths[j + this.radius];
+            for (int i = -halfWidth; i <= halfWidth; i++)
+                coverage[(j + this.radius) * size + i + this.radius] =
+                        Geometry.boxAndCircleIntersectionOverlap(
+                                i, i + 1, j, j + 1, offsetX, offsetY, radius);
+        }
+    }
+
+    /**
+     * @return the fraction of texel (i, j) relative to the centre texel that is inside
+     * the circle, where (i, j) is within the footprint
+     */
+    float coverage(int i, int j) {
+        return coverage[(j + radius) * (2 * radius + 1) + i + radius];
+    }
+
+    /**
+     * @return the half-width of every row j in [-radius, radius] of the footprint,
+     * indexed by j + radius
+     */
+    static int[] footprint(int radius) {
+        if (radius < 0)
+            radius = 0;
+        return footprints.computeIfAbsent(radius, r -> {
+            int[] halfWidths = new int[2 * r + 1];
+            for (int j = -r; j <= r; j++) {
+                int halfWidth = 0;
+                while ((halfWidth + 1) * (halfWidth + 1) + j * j <= r * r)
+                    halfWidth++;
+                halfWidths[j + r] = halfWidth;
+            }
+            return halfWidths;
+        });
+    }
+
+    /**
+     * @param radius the circle radius in texels
+     * @param offsetX the position of the centre within its texel, in [0, 1]
+     * @param offsetY the position of the centre within its texel, in [0, 1]
+     * @return the coverage stamp for the nearest quantised radius and offset
+     */
+    static CircleStamp coverage(float radius, float offsetX, float offsetY) {
+        int radiusBin = Math.max(0, (int) (radius * SUBDIVISIONS));
+        int xBin = Math.max(0, Math.min(SUBDIVISIONS - 1, (int) (offsetX * SUBDIVISIONS)));
+        int yBin = Math.max(0, Math.min(SUBDIVISIONS - 1, (int) (offsetY * SUBDIVISIONS)));
+
+        CircleStamp[] byOffset = stamps.computeIfAbsent(
+                radiusBin, r -> new CircleStamp[SUBDIVISIONS * SUBDIVISIONS]);
+        int offsetBin = yBin * SUBDIVISIONS + xBin;
+        CircleStamp stamp = byOffset[offsetBin];
+        if (stamp == null) {
+            // Stamps are immutable, so a race here at worst builds the same stamp twice
+            stamp = new CircleStamp(
+                    (radiusBin + 0.5f) / SUBDIVISIONS,
+                    (xBin + 0.5f) / SUBDIVISIONS,
+                    (yBin + 0.5f) / SUBDIVISIONS);
+            byOffset[offsetBin] = stamp;
+        }
+        return stamp;
+    }
+}
@@ -0,0 +1,122 @@
+package com.protoevo.env;
+
+/**
+ * Mip pyramid of the chemical densities, used to answer density and gradient queries at
+ * large spatial scales with a constant number of reads.
+ * <br>
+ * Level 0 is the field itself and is not stored here. Each level above it halves the
+ * resolution (rounding up), with every texel holding the mean density of the up to 2x2
+ * texels below it, until a single texel remains. A density is a colour channel multiplied
+ * by alpha, as returned by {@link ChemicalSolution#getDensity(int, int, int)}.
+ */
+final class DensityPyramid {
+
+    static final int AXES = 4;
+
+    private final int[] widths, heights;
+    // levels[level][axis][y * width + x], with levels[0] unused
+    private final float[][][] levels;
+
+    DensityPyramid(int width, int height) {
+        int nLevels = 1;
+        for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2)
+            nLevels++;
+
+        widths = new int[nLevels];
+        heights = new int[nLevels];
+        levels = new float[nLevels][][];
+        widths[0] = width;
+        heights[0] = height;
+        for (int level = 1; level < nLevels; level++) {
+            widths[level] = (widths[level - 1] + 1) / 2;
+            heights[level] = (heights[level - 1] + 1) / 2;
+            levels[level] = new float[AXES][widths[level] * heights[level]];
+        }
+    }
+
+    int getLevelCount() {
+        return widths.length;
+    }
+
+    int getWidth(int level) {
+        return widths[level];
+    }
+
+    int getHeight(int level) {
+        return heights[level];
+    }
+
+    float get(int level, int axis, int x, int y) {
+        return levels[level][axis][y * widths[level] + x];
+    }
+
+    /**
+     * Recomputes every texel in levels (minLevel, maxLevel] whose footprint overlaps the
+     * level 0 region [x0, x1) x [y0, y1). Updates of regions that share no texel on any of
+     * these levels may run concurrently.
+     */
+    void update(float[] red, float[] green, float[] blue, float[] alpha,
+                int x0, int x1, int y0, int y1, int minLevel, int maxLevel) {
+        for (int level = minLevel + 1; level <= Math.min(maxLevel, getLevelCount() - 1); level++) {
+            int u0 = x0 >> level, u1 = Math.min(widths[level], ((x1 - 1) >> level) + 1);
+            int v0 = y0 >> level, v1 = Math.min(heights[level], ((y1 - 1) >> level) + 1);
+            if (level == 1)
+                downsampleField(red, green, blue, alpha, u0, u1, v0, v1);
+            else
+                downsample(level, u0, u1, v0, v1);
+        }
+    }
+
+    private void downsampleField(float[] red, float[] green, float[] blue, float[] alpha,
+                                 int u0, int u1, int v0, int v1) {
+        int width = widths[0], height = heights[0];
+        float[][] out = levels[1];
+        for (int v = v0; v < v1; v++) {
+            int yEnd = Math.min(height, 2 * v + 2);
+            for (int u = u0; u < u1; u++) {
+                int xEnd = Math.min(width, 2 * u + 2);
+                float r = 0, g = 0, b = 0, a = 0;
+                int n = 0;
+                for (int y = 2 * v; y < yEnd; y++) {
+                    for (int x = 2 * u; x < xEnd; x++) {
+                        int i = y * width + x;
+                        float alphaI = alpha[i];
+                        r += red[i] * alphaI;
+                        g += green[i] * alphaI;
+                        b += blue[i] * alphaI;
+                        a += alphaI * alphaI;
+                        n++;
+                    }
+                }
+                int o = v * widths[1] + u;
+                out[0][o] = r / n;
+                out[1][o] = g / n;
+                out[2][o] = b / n;
+                out[3][o] = a / n;
+            }
+        }
+    }
+
+    private void downsample(int level, int u0, int u1, int v0, int v1) {
+        int width = widths[level - 1], height = heights[level - 1];
+        for (int axis = 0; axis < AXES; axis++) {
+            float[] in = levels[level - 1][axis];
+            float[] out = levels[level][axis];
+            for (int v = v0; v < v1; v++) {
+                int yEnd = Math.min(height, 2 * v + 2);
+                for (int u = u0; u < u1; u++) {
+                    int xEnd = Math.min(width, 2 * u + 2);
+                    float sum = 0;
+                    int n = 0;
+                    for (int y = 2 * v; y < yEnd; y++) {
+                        for (int x = 2 * u; x < xEnd; x++) {
+                            sum += in[y * width + x];
+                            n++;
+                        }
+                    }
+                    out[v * widths[level] + u] = sum / n;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.protoevo.env;
+
+/**
+ * CPU implementation of the chemical diffusion kernel (see assets/kernels/diffusion.cu).
+ * <br>
+ * Each texel becomes the 3x3 box average of its neighbourhood's alpha, scaled by the texel's
+ * decay, while its colour becomes the alpha-weighted average of the neighbourhood's colour,
+ * scaled by the decay. Texels whose alpha falls below 5/255 lose their colour. Like the GPU
+ * kernels, the box average always divides by 9, so alpha bleeds away at the edges.
+ * <br>
+ * The 3x3 sums are computed separably: a vertical pass accumulates three rows into scratch
+ * arrays, then a horizontal pass sums three columns of the scratch arrays.
+ * {@link VectorDiffusionStencil} computes the same stencil with the Vector API.
+ */
+final class DiffusionStencil {
+
+    static final boolean VECTOR_API_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static final float MIN_ALPHA = 5f / 255f;
+    static final float FILTER_AREA = 9f;
+
+    /**
+     * Vertical sums of one row, reused across calls by the worker that owns them.
+     */
+    static final class ScratchRows {
+        float[] sumR = new float[0], sumG = new float[0], sumB = new float[0], sumA = new float[0];
+    }
+
+    private static final ThreadLocal<ScratchRows> scratchRows = ThreadLocal.withInitial(ScratchRows::new);
+
+    private DiffusionStencil() {}
+
+    /**
+     * @return the calling thread's scratch rows, grown to hold at least width texels
+     */
+    static ScratchRows getScratchRows(int width) {
+        ScratchRows rows = scratchRows.get();
+        if (rows.sumA.length < width) {
+            rows.sumR = new float[width];
+            rows.sumG = new float[width];
+            rows.sumB = new float[width];
+            rows.sumA = new float[width];
+        }
+        return rows;
+    }
+
+    /**
+     * Computes the per-texel decay factor, which fades from 0.995 to zero across the outer
+     * tenth of the distance to the void.
+     */
+    static float[] createDecayField(int width, int height, float worldRadius) {
+        float[] decay = new float[width * height];
+        float cellSizeX = 2 * worldRadius / width;
+        float cellSizeY = 2 * worldRadius / height;
+        float voidP = 0.9f;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float worldX = -worldRadius + cellSizeX * x;
+                float worldY = -worldRadius + cellSizeY * y;
+                float dist2 = worldX * worldX + worldY * worldY;
+                float d;
+                if (dist2 > voidP * voidP * worldRadius * worldRadius) {
+                    float dist = (float) Math.sqrt(dist2);
+                    d = 0.9995f * (1f - (dist - voidP * worldRadius) / ((1f - voidP) * worldRadius));
+                    if (d < 0f)
+                        d = 0f;
+                } else {
+                    d = 0.995f;
+                }
+                decay[y * width + x] = d;
+            }
+        }
+        return decay;
+    }
+
+    /**
+     * Diffuses the texels in columns [xStart, xEnd) of rows [yStart, yEnd) of the source
+     * channels into the destination channels. Channels are indexed by {@code y * width + x}.
+     */
+    static void diffuseRegion(float[] r, float[] g, float[] b, float[] a,
+                              float[] outR, float[] outG, float[] outB, float[] outA,
+                              float[] decay, int width, int height,
+                              int xStart, int xEnd, int yStart, int yEnd) {
+        ScratchRows rows = getScratchRows(width);
+        float[] sumR = rows.sumR, sumG = rows.sumG, sumB = rows.sumB, sumA = rows.sumA;
+        int sumStart = Math.max(0, xStart - 1), sumEnd = Math.min(width, xEnd + 1);
+
+        for (int y = yStart; y < yEnd; y++) {
+            sumVertical(r, g, b, a, sumR, sumG, sumB, sumA, width, height, sumStart, sumEnd, y);
+
+            int row = y * width;
+            for (int x = xStart; x < xEnd; x++)
+                horizontalTexel(sumR, sumG, sumB, sumA, outR, outG, outB, outA, decay, width, row, x);
+        }
+    }
+
+    /**
+     * Accumulates alpha and alpha-weighted colour in columns [xStart, xEnd) over rows y-1, y
+     * and y+1 (where they exist).
+     */
+    static void sumVertical(float[] r, float[] g, float[] b, float[] a,
+                            float[] sumR, float[] sumG, float[] sumB, float[] sumA,
+                            int width, int height, int xStart, int xEnd, int y) {
+        int yMin = Math.max(0, y - 1), yMax = Math.min(height - 1, y + 1);
+        int first = yMin * width;
+        for (int x = xStart; x < xEnd; x++) {
+            float alpha = a[first + x];
+            sumA[x] = alpha;
+            sumR[x] = r[first + x] * alpha;
+            sumG[x] = g[first + x] * alpha;
+            sumB[x] = b[first + x] * alpha;
+        }
+        for (int yy = yMin + 1; yy <= yMax; yy++) {
+            int row = yy * width;
+            for (int x = xStart; x < xEnd; x++) {
+                float alpha = a[row + x];
+                sumA[x] += alpha;
+                sumR[x] += r[row + x] * alpha;
+                sumG[x] += g[row + x] * alpha;
+                sumB[x] += b[row + x] * alpha;
+            }
+        }
+    }
+
+    /**
+     * Sums three columns of the vertical sums around x and writes the texel.
+     */
+    static void horizontalTexel(float[] sumR, float[] sumG, float[] sumB, float[] sumA,
+                                float[] outR, float[] outG, float[] outB, float[] outA,
+                                float[] decay, int width, int row, int x) {
+        float sa = sumA[x], sr = sumR[x], sg = sumG[x], sb = sumB[x];
+        if (x > 0) {
+            sa += sumA[x - 1]; sr += sumR[x - 1]; sg += sumG[x - 1]; sb += sumB[x - 1];
+        }
+        if (x < width - 1) {
+            sa += sumA[x + 1]; sr += sumR[x + 1]; sg += sumG[x + 1]; sb += sumB[x + 1];
+        }
+        writeTexel(outR, outG, outB, outA, row + x, decay[row + x], sa, sr, sg, sb);
+    }
+
+    static void writeTexel(float[] outR, float[] outG, float[] outB, float[] outA,
+                           int i, float decay, float sa, float sr, float sg, float sb) {
+        float finalAlpha = decay * sa / FILTER_AREA;
+        outA[i] = finalAlpha;
+        if (finalAlpha < MIN_ALPHA) {
+            outR[i] = 0f;
+            outG[i] = 0f;
+            outB[i] = 0f;
+        } else {
+            // decay * (sum of c * decay * a / 9) / finalAlpha, with the decay and area cancelled
+            float scale = decay / sa;
+            outR[i] = sr * scale;
+            outG[i] = sg * scale;
+            outB[i] = sb * scale;
+        }
+    }
+}
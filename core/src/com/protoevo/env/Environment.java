@@ -3,19 +3,24 @@ package com.protoevo.env;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.google.common.collect.Streams;
 import com.protoevo.biology.BurstRequest;
 import com.protoevo.biology.CauseOfDeath;
+import com.protoevo.biology.CellInteractions;
 import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.EvolvableCell;
 import com.protoevo.biology.cells.MeatCell;
 import com.protoevo.biology.cells.PlantCell;
 import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.nn.NetworkBatchEvaluator;
+import com.protoevo.biology.nn.NeuralNetwork;
 import com.protoevo.biology.nodes.NodeAttachment;
 import com.protoevo.core.Statistics;
+import com.protoevo.core.TickScheduler;
 import com.protoevo.maths.Shape;
 import com.protoevo.physics.*;
 import com.protoevo.physics.box2d.Box2DPhysics;
+import com.protoevo.physics.fast.FastPhysics;
 import com.protoevo.settings.SimulationSettings;
 import com.protoevo.maths.Geometry;
 import com.protoevo.utils.SerializableFunction;
@@ -47,6 +52,15 @@ public class Environment implements Serializable
 			new ConcurrentHashMap<>(CauseOfDeath.values().length, 1);
 
 	private transient Chunks chunks;
+	private transient TickScheduler tickScheduler;
+	private transient CellInteractions cellInteractions;
+	private transient Queue<EvolvableCell> pendingGeneExpression;
+	private transient NetworkBatchEvaluator grnBatchEvaluator;
+	private transient List<EvolvableCell> geneExpressionOrder;
+	private transient float tickDelta;
+	private transient Cell[] sampledCells = new Cell[0];
+	private transient float[] sampleXs = new float[0], sampleYs = new float[0];
+	private transient float[] sampledLight = new float[0], sampledTemperature = new float[0];
 
 	private Map<Class<? extends Cell>, SerializableFunction<Float, Vector2>> spawnPositionFns;
 
@@ -85,7 +99,10 @@ public class Environment implements Serializable
 
 		hasStarted = false;
 		createTransientObjects();
-		physics = new Box2DPhysics();
+		if (settings.misc.useMultithreadedPhysics.get())
+			physics = new FastPhysics();
+		else
+			physics = new Box2DPhysics();
 
 		System.out.println("Creating chemicals solution... ");
 		if (Environment.settings.enableChemicalField.get()) {
@@ -109,9 +126,68 @@ public class Environment implements Serializable
 
 	public void createTransientObjects() {
 		cellsToAdd = new HashSet<>();
+		cellInteractions = new CellInteractions();
+		pendingGeneExpression = new ConcurrentLinkedQueue<>();
+		grnBatchEvaluator = new NetworkBatchEvaluator();
+		geneExpressionOrder = new ArrayList<>();
 		chunks = new Chunks();
 		chunks.initialise();
-		updateChunkAllocations();
+		chunks.indexRocks(rocks);
+		chunks.rebuild(getCells());
+		buildTickScheduler();
+	}
+
+	/**
+	 * Resources shared between the phases of a tick. Phases declare which of these
+	 * they read and write, and the scheduler runs non-conflicting phases concurrently.
+	 * The chemical field is double-buffered: diffusion reads CHEMICAL_FIELD and writes
+	 * DIFFUSED_CHEMICAL_FIELD, so it can overlap with phases that only read the field.
+	 * BURST_REQUESTS is written by any phase that may split or kill a cell, since both
+	 * post burst requests, and is consumed by births and deaths.
+	 */
+	public enum TickResource {
+		PARTICLES, PHYSICS_WORLD, CLOCK, CELLS, POPULATION, CHUNKS, CHEMICAL_FIELD, DIFFUSED_CHEMICAL_FIELD,
+		BURST_REQUESTS
+	}
+
+	private void buildTickScheduler() {
+		if (tickScheduler != null)
+			tickScheduler.shutdown();
+		tickScheduler = new TickScheduler(settings.misc.simulationWorkerThreads.get());
+
+		tickScheduler.addPhase("Particle Sync", this::syncParticles)
+				.reads(TickResource.POPULATION)
+				.writes(TickResource.PARTICLES, TickResource.PHYSICS_WORLD);
+		tickScheduler.addPhase("Environment Clock", this::updateClock)
+				.writes(TickResource.CLOCK);
+		tickScheduler.addPhase("Physics Step", this::stepPhysics)
+				.writes(TickResource.PARTICLES, TickResource.PHYSICS_WORLD);
+		tickScheduler.addPhase("Chemical Diffusion", this::updateChemicalDiffusion)
+				.reads(TickResource.CHEMICAL_FIELD)
+				.writes(TickResource.DIFFUSED_CHEMICAL_FIELD)
+				.runOnCallingThread(ChemicalSolution.requiresSimulationThread());
+		tickScheduler.addPhase("Cell Updates", this::handleCellUpdates)
+				.reads(TickResource.CLOCK, TickResource.POPULATION, TickResource.CHUNKS, TickResource.CHEMICAL_FIELD)
+				.writes(TickResource.CELLS, TickResource.PARTICLES, TickResource.BURST_REQUESTS);
+		tickScheduler.addPhase("Gene Expression", this::handleGeneExpression)
+				.reads(TickResource.CLOCK, TickResource.POPULATION, TickResource.CHEMICAL_FIELD)
+				.writes(TickResource.CELLS, TickResource.PARTICLES, TickResource.BURST_REQUESTS);
+		tickScheduler.addPhase("Interaction Resolve", cellInteractions::resolve)
+				.writes(TickResource.CELLS, TickResource.BURST_REQUESTS);
+		tickScheduler.addPhase("Chemical Swap", this::swapDiffusedChemicals)
+				.writes(TickResource.CHEMICAL_FIELD, TickResource.DIFFUSED_CHEMICAL_FIELD);
+		tickScheduler.addPhase("Births and Deaths", this::handleBirthsAndDeaths)
+				.writes(TickResource.POPULATION, TickResource.CHUNKS, TickResource.CELLS,
+						TickResource.PARTICLES, TickResource.PHYSICS_WORLD, TickResource.CHEMICAL_FIELD,
+						TickResource.BURST_REQUESTS);
+		tickScheduler.addPhase("Chunk Allocation", this::updateChunkAllocations)
+				.reads(TickResource.POPULATION, TickResource.PARTICLES)
+				.writes(TickResource.CHUNKS);
+		tickScheduler.addPhase("Joints", this::flushJoints)
+				.writes(TickResource.PHYSICS_WORLD, TickResource.CELLS, TickResource.BURST_REQUESTS);
+		tickScheduler.addPhase("Chemical Deposit", this::depositChemicals)
+				.reads(TickResource.POPULATION, TickResource.PARTICLES)
+				.writes(TickResource.CHEMICAL_FIELD, TickResource.CELLS, TickResource.BURST_REQUESTS);
 	}
 
 	public boolean hasStarted() {
@@ -124,30 +200,48 @@ public class Environment implements Serializable
 		physics.rebuildTransientFields(this);
 		for (Cell cell : getCells())
 			cell.setEnvironment(this);
-		updateChunkAllocations();
+		chunks.rebuild(getCells());
 	}
 
 	public void update(float delta)
 	{
 		hasStarted = true;
 		settings = mySettings;
+		tickDelta = delta;
+		tickScheduler.runTick();
+	}
+
+	private void syncParticles() {
 		for (Cell cell : getCells())
 			cell.getParticle().physicsUpdate();
+	}
 
-		timeManager.update(delta);
-		light.update(delta);
-
-		physics.step(delta);
+	private void updateClock() {
+		timeManager.update(tickDelta);
+		light.update(tickDelta);
+	}
 
-  		handleCellUpdates(delta);
-		handleBirthsAndDeaths();
-		updateChunkAllocations();
+	private void stepPhysics() {
+		physics.step(tickDelta);
+	}
 
+	private void flushJoints() {
 		physics.getJointsManager().flushJoints();
+	}
 
-		if (Environment.settings.enableChemicalField.get()) {
-			chemicalSolution.update(delta);
-		}
+	private void updateChemicalDiffusion() {
+		if (Environment.settings.enableChemicalField.get())
+			chemicalSolution.updateDiffusion(tickDelta);
+	}
+
+	private void swapDiffusedChemicals() {
+		if (Environment.settings.enableChemicalField.get())
+			chemicalSolution.swapDiffusedField();
+	}
+
+	private void depositChemicals() {
+		if (Environment.settings.enableChemicalField.get())
+			chemicalSolution.deposit(tickDelta);
 	}
 
 	public void ensureAddedToEnvironment(Cell cell) {
@@ -155,8 +249,73 @@ public class Environment implements Serializable
 			registerToAdd(cell);
 	}
 
-	private void handleCellUpdates(float delta) {
-		getCells().parallelStream().forEach(new CellUpdateConsumer(delta));
+	private void handleCellUpdates() {
+		// runs on a tick scheduler worker, so the parallel stream uses the scheduler's pool
+		cellInteractions.beginCollecting();
+		sampleCellEnvironments();
+		getCells().parallelStream().forEach(new CellUpdateConsumer(tickDelta));
+	}
+
+	/**
+	 * Samples the light and temperature at every cell in one pass over the light map,
+	 * so that cell updates don't each have to query it.
+	 */
+	private void sampleCellEnvironments() {
+		int n = cells.size();
+		if (sampledCells == null || sampledCells.length < n) {
+			int capacity = Math.max(n, 2 * (sampledCells == null ? 0 : sampledCells.length));
+			sampledCells = new Cell[capacity];
+			sampleXs = new float[capacity];
+			sampleYs = new float[capacity];
+			sampledLight = new float[capacity];
+			sampledTemperature = new float[capacity];
+		}
+
+		int i = 0;
+		for (Cell cell : getCells()) {
+			Vector2 pos = cell.getPos();
+			sampledCells[i] = cell;
+			sampleXs[i] = pos.x;
+			sampleYs[i] = pos.y;
+			i++;
+		}
+
+		light.getLightAndTemperature(sampleXs, sampleYs, n, sampledLight, sampledTemperature,
+				settings.env.maxLightEnvTemp.get());
+
+		for (i = 0; i < n; i++) {
+			sampledCells[i].setEnvironmentSample(sampledLight[i], sampledTemperature[i]);
+			sampledCells[i] = null;
+		}
+	}
+
+	public void requestGeneExpression(EvolvableCell cell) {
+		pendingGeneExpression.add(cell);
+	}
+
+	/**
+	 * Ticks the regulatory networks of cells that requested gene expression during their
+	 * update in topology-sharing batches, then lets each cell apply its new trait values.
+	 */
+	private void handleGeneExpression() {
+		if (pendingGeneExpression.isEmpty())
+			return;
+
+		// the queue is filled in whatever order the parallel cell updates finished,
+		// so batches are packed in id order to keep them the same from run to run
+		geneExpressionOrder.addAll(pendingGeneExpression);
+		pendingGeneExpression.clear();
+		geneExpressionOrder.sort(Comparator.comparingLong(Cell::getId));
+
+		for (EvolvableCell cell : geneExpressionOrder) {
+			NeuralNetwork grn = cell.getGeneExpressionFunction().getRegulatoryNetwork();
+			if (grn != null)
+				grnBatchEvaluator.add(grn);
+		}
+		grnBatchEvaluator.tickAll();
+
+		geneExpressionOrder.parallelStream().forEach(EvolvableCell::completeGeneExpression);
+		geneExpressionOrder.clear();
 	}
 
 	private void handleBirthsAndDeaths() {
@@ -165,6 +324,8 @@ public class Environment implements Serializable
 			BurstRequest<? extends Cell> burstRequest = burstRequests.get(parent);
 			if (hasBurstCapacity(parent, burstRequest.getCellType()) && burstRequest.canBurst()) {
 				burstRequest.burst();
+				// the children are now positioned, so later bursts see them in the pending counts
+				chunks.refreshPending();
 				handledBurstRequests.add(parent);
 			}
 		}
@@ -178,6 +339,7 @@ public class Environment implements Serializable
 			if (cell.isDead()) {
 				dispose(cell);
 				depositOnDeath(cell);
+				chunks.remove(cell);
 			}
 		}
 		getCells().removeIf(isDeadPredicate);
@@ -186,6 +348,7 @@ public class Environment implements Serializable
 	public void createRocks() {
 		System.out.println("Creating rocks structures...");
 		rocks.addAll(WorldGeneration.generate());
+		chunks.indexRocks(rocks);
 		physics.registerStaticBodies(this);
 	}
 
@@ -279,6 +442,8 @@ public class Environment implements Serializable
 			return;
 		}
 		cell.getParticle().setPos(pos);
+		if (cellsToAdd.contains(cell))
+			chunks.updatePending(cell);
 	}
 
 	public Vector2 randomPosition(float entityRadius, Vector2[] clusterCentres) {
@@ -361,6 +526,7 @@ public class Environment implements Serializable
 	}
 
 	private void flushEntitiesToAdd() {
+		chunks.clearPending();
 		for (Cell cell : cellsToAdd)
 			tryAdd(cell);
 		cellsToAdd.clear();
@@ -371,9 +537,8 @@ public class Environment implements Serializable
 	}
 
 	public void updateChunkAllocations() {
-		chunks.clear();
 		for (Cell cell : getCells())
-			chunks.allocate(cell);
+			chunks.update(cell);
 	}
 
 	private void dispose(Cell e) {
@@ -406,12 +571,7 @@ public class Environment implements Serializable
 	}
 
 	public int getGlobalCount(Class<? extends Cell> cellType) {
-		int toAdd = 0;
-		for (Cell cell : cellsToAdd)
-			if (cell.getClass().equals(cellType))
-				toAdd++;
-
-		return chunks.getGlobalCount(cellType) + toAdd;
+		return chunks.getGlobalCount(cellType) + chunks.getPendingGlobalCount(cellType);
 	}
 
 	public int getGlobalCapacity(Cell cell) {
@@ -427,17 +587,7 @@ public class Environment implements Serializable
 	}
 
 	public int getLocalCount(Class<? extends Cell> cellType, Vector2 pos) {
-		int existingCount = chunks.getChunkCount(cellType, pos);
-		SpatialHash<? extends Cell> cellHash = chunks.getCellHash(cellType, pos);
-		int chunkX = cellHash.getChunkX(pos.x);
-		int chunkY = cellHash.getChunkY(pos.y);
-		for (Cell cell : cellsToAdd) {
-			int thisChunkX = cellHash.getChunkX(cell.getPos().x);
-			int thisChunkY = cellHash.getChunkY(cell.getPos().y);
-			if (thisChunkY == chunkY && thisChunkX == chunkX)
-				existingCount++;
-		}
-		return existingCount;
+		return chunks.getChunkCount(cellType, pos) + chunks.getPendingChunkCount(cellType, pos);
 	}
 
 	public int getLocalCapacity(Cell cell) {
@@ -449,7 +599,8 @@ public class Environment implements Serializable
 	}
 
 	public void registerToAdd(Cell e) {
-		cellsToAdd.add(e);
+		if (cellsToAdd.add(e))
+			chunks.addPending(e);
 	}
 
 	public Statistics getStats() {
@@ -495,6 +646,15 @@ public class Environment implements Serializable
 			if (count > 0)
 				debugStats.put("Died from " + cod.getReason(), (float) count);
 		}
+		if (tickScheduler != null) {
+			debugStats.putCount("Tick Worker Threads", tickScheduler.getParallelism());
+			for (TickScheduler.Phase phase : tickScheduler.getPhases())
+				debugStats.putTime(phase.getName() + " Time", phase.getLastDuration());
+		}
+		if (settings.misc.batchGeneExpression.get()) {
+			debugStats.putCount("Batched GRNs", grnBatchEvaluator.getLastNetworkCount());
+			debugStats.putCount("GRN Topology Groups", grnBatchEvaluator.getLastGroupCount());
+		}
 		return debugStats;
 	}
 
@@ -531,16 +691,11 @@ public class Environment implements Serializable
 	}
 
 	public Optional<? extends Shape> getCollidingShape(Vector2 pos, float r) {
-		Optional<Rock> collidingRock = rocks.stream()
-				.filter(new RockCollisionWithParticlePredicate(pos, r))
-				.findAny();
+		Optional<Rock> collidingRock = chunks.anyOverlappingRock(pos, r);
 		if (collidingRock.isPresent())
 			return collidingRock;
 
-		return Streams.concat(getCells().stream(), cellsToAdd.stream())
-				.filter(new DoCirclesCollidePredicate(pos, r))
-				.map(getParticleFn)
-				.findAny();
+		return chunks.anyOverlapping(pos, r).map(getParticleFn);
 	}
 
 	public float getElapsedTime() {
@@ -597,7 +752,7 @@ public class Environment implements Serializable
 		requestBurst(parent, cellType, createChild, false);
 	}
 
-	public SpatialHash<Cell> getSpatialHash(Class<? extends Cell> clazz) {
+	public UniformGrid<Cell> getSpatialHash(Class<? extends Cell> clazz) {
 		return chunks.getSpatialHash(clazz);
 	}
 
@@ -605,6 +760,10 @@ public class Environment implements Serializable
 		return chunks;
 	}
 
+	public CellInteractions getCellInteractions() {
+		return cellInteractions;
+	}
+
 	public void incrementCrossOverCount() {
 		crossoverEvents = crossoverEvents + 1;
 	}
@@ -614,6 +773,8 @@ public class Environment implements Serializable
 	}
 
 	public void dispose() {
+		if (tickScheduler != null)
+			tickScheduler.shutdown();
 		physics.dispose();
 	}
 
@@ -656,7 +817,7 @@ public class Environment implements Serializable
 
 		@Override
 		public void accept(Cell cell) {
-			cell.update(delta);
+			cell.scheduledUpdate(delta);
 		}
 	}
 
@@ -3,94 +3,17 @@ package com.protoevo.env;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 import com.protoevo.maths.Functions;
-import com.protoevo.maths.Shape;
-import com.protoevo.physics.SpatialHash;
-import com.protoevo.maths.Geometry;
 import com.protoevo.utils.Perlin;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.stream.IntStream;
 
 public class LightManager implements Serializable {
     public static long serialVersionUID = 1L;
 
     public static void bakeRockShadows(LightManager lightManager, List<Rock> rocks) {
         float rayLen = Environment.settings.worldgen.maxRockSize.get() * 5f;
-
-        int resolution = (int) (lightManager.getFieldWidth() / rayLen);
-
-        SpatialHash<Rock> rockSpatialHash = new SpatialHash<>(resolution, Environment.settings.worldgen.radius.get());
-        for (Rock rock : rocks) {
-            rockSpatialHash.add(rock, rock.getBoundingBox());
-        }
-
-        collectLight(lightManager, rockSpatialHash, rayLen);
-    }
-
-    private static void collectLight(LightManager lightManager, SpatialHash<Rock> rockSpatialHash, float rayLen) {
-
-        int lightSamples = 16;
-
-        final Vector2[] ray = new Vector2[2];
-
-        final Shape.Intersection[] intersections =
-                new Shape.Intersection[]{new Shape.Intersection(), new Shape.Intersection()};
-
-        IntStream.range(0, lightManager.width * lightManager.height).forEach(i -> {
-            int x = i % lightManager.width;
-            int y = i / lightManager.width;
-            Vector2 cellPos = lightManager.toEnvironmentCoords(x, y);
-            ray[0] = cellPos;
-
-            float collisionValue = 0f;
-
-            int hashIMin = rockSpatialHash.getChunkX(cellPos.x - rayLen);
-            int hashIMax = rockSpatialHash.getChunkX(cellPos.x + rayLen);
-            int hashJMin = rockSpatialHash.getChunkY(cellPos.y - rayLen);
-            int hashJMax = rockSpatialHash.getChunkY(cellPos.y + rayLen);
-
-            Set<Rock> checkRocks = new HashSet<>();
-
-            for (int a = 0; a < lightSamples; a++) {
-                float angle = (float) (a * Math.PI * 2 / lightSamples);
-                Vector2 rayDir = Geometry.fromAngle(angle).scl(rayLen);
-                ray[1] = cellPos.cpy().add(rayDir);
-                float dist = rayLen;
-
-                checkRocks.clear();
-
-                for (int hashI = hashIMin; hashI <= hashIMax; hashI++) {
-                    for (int hashJ = hashJMin; hashJ <= hashJMax; hashJ++) {
-                        checkRocks.addAll(rockSpatialHash.getChunkContents(hashI, hashJ));
-                    }
-                }
-
-                for (Rock rock : checkRocks) {
-                    intersections[0].didCollide = false;
-                    intersections[1].didCollide = false;
-                    if (rock.rayCollisions(ray, intersections)) {
-                        dist = Math.min(dist, getClosestDist(cellPos, intersections));
-                    }
-                }
-                collisionValue += 1 - dist / rayLen;
-            }
-
-            collisionValue /= lightSamples;
-            float t = 0.25f;
-            float light = Functions.clampedLinearRemap(collisionValue, t, 1 - t, 1, 0);
-
-            lightManager.setCellLight(x, y, light);
-        });
-    }
-
-    private static float getClosestDist(Vector2 point, Shape.Intersection[] intersections) {
-        float dist = Float.MAX_VALUE;
-        if (intersections[0].didCollide)
-            dist = Math.min(dist, point.dst(intersections[0].point));
-        if (intersections[1].didCollide)
-            dist = Math.min(dist, point.dst(intersections[1].point));
-        return dist;
+        new RockShadowBaker(lightManager, rocks, rayLen).bake();
     }
 
     private float[][] lightMap;
@@ -101,6 +24,17 @@ public class LightManager implements Serializable {
     private float environmentLight = 1f;
     private TimeManager timeManager;
 
+    // Flat copies of the light map, indexed by y * width + x. The lit field is the light map
+    // multiplied by the environment light and clamped, and is rebuilt whenever either changes.
+    // It is rebuilt into the spare buffer, which is then swapped in, so only the two buffers are
+    // ever allocated; a reader still holding the older one just sees a mix of two light levels.
+    private transient float[] baseLight;
+    private transient volatile float[] litField;
+    private transient float[] spareLitField;
+    private transient float litEnvironmentLight = Float.NaN;
+    private transient float texelsPerUnitX, texelsPerUnitY;
+    private transient volatile boolean baseLightStale = true;
+
     public LightManager() {}
 
     public LightManager(int width, int height, float radius) {
@@ -139,6 +73,7 @@ public class LightManager implements Serializable {
                 );
             }
         }
+        baseLightStale = true;
     }
 
     public void update(float delta) {
@@ -171,27 +106,91 @@ public class LightManager implements Serializable {
             environmentLight = Functions.clampedLinearRemap(
                     t, 1 - transition, 1, nightLightLevel, 1f);
         }
+        refreshLitField();
+    }
+
+    private synchronized float[] refreshLitField() {
+        if (baseLightStale || baseLight == null) {
+            // cleared first so that writes racing with the copy mark it stale again
+            baseLightStale = false;
+            if (baseLight == null) {
+                baseLight = new float[width * height];
+                texelsPerUnitX = 1f / cellSizeX;
+                texelsPerUnitY = 1f / cellSizeY;
+            }
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++)
+                    baseLight[y * width + x] = lightMap[x][y];
+            litEnvironmentLight = Float.NaN;
+        }
+        if (litField == null || litEnvironmentLight != environmentLight) {
+            float[] lit = spareLitField;
+            if (lit == null)
+                lit = new float[width * height];
+            for (int i = 0; i < lit.length; i++)
+                lit[i] = MathUtils.clamp(environmentLight * baseLight[i], 0f, 1f);
+            litEnvironmentLight = environmentLight;
+            spareLitField = litField;
+            litField = lit;
+        }
+        return litField;
+    }
+
+    private float[] getLitField() {
+        float[] lit = litField;
+        if (lit == null || baseLightStale || litEnvironmentLight != environmentLight)
+            lit = refreshLitField();
+        return lit;
     }
 
     public float getCellLight(int x, int y) {
         return lightMap[x][y];
     }
 
-    private float getLightLevel(float x, float y) {
-        int i = (int) ((x - xMin) / cellSizeX);
-        int j = (int) ((y - yMin) / cellSizeY);
-        if (i < 0 || i >= width || j < 0 || j >= height)
-            return 1f;
-        return lightMap[i][j];
+    /**
+     * Bilinearly samples the lit field between texel centres. Positions outside
+     * the light map receive the unshadowed environment light.
+     */
+    private float sampleLitField(float[] lit, float x, float y) {
+        if (x < xMin || x >= xMax || y < yMin || y >= yMax)
+            return MathUtils.clamp(environmentLight, 0f, 1f);
+
+        float u = (x - xMin) * texelsPerUnitX - 0.5f;
+        float v = (y - yMin) * texelsPerUnitY - 0.5f;
+        int i0 = MathUtils.clamp(MathUtils.floor(u), 0, width - 1);
+        int j0 = MathUtils.clamp(MathUtils.floor(v), 0, height - 1);
+        int i1 = Math.min(i0 + 1, width - 1);
+        int j1 = Math.min(j0 + 1, height - 1);
+        float fu = MathUtils.clamp(u - i0, 0f, 1f);
+        float fv = MathUtils.clamp(v - j0, 0f, 1f);
+
+        int row0 = j0 * width, row1 = j1 * width;
+        float top = lit[row0 + i0] + fu * (lit[row0 + i1] - lit[row0 + i0]);
+        float bottom = lit[row1 + i0] + fu * (lit[row1 + i1] - lit[row1 + i0]);
+        return top + fv * (bottom - top);
     }
 
     public float getLightLevel(Vector2 pos) {
-        float light = getLightLevel(pos.x, pos.y);
-        return MathUtils.clamp(environmentLight * light, 0f, 1f);
+        return sampleLitField(getLitField(), pos.x, pos.y);
+    }
+
+    /**
+     * Samples the light level and resulting environment temperature at n positions.
+     * @param maxLightTemperature the temperature at full light
+     */
+    public void getLightAndTemperature(float[] xs, float[] ys, int n,
+                                       float[] lightOut, float[] temperatureOut,
+                                       float maxLightTemperature) {
+        float[] lit = getLitField();
+        for (int k = 0; k < n; k++)
+            lightOut[k] = sampleLitField(lit, xs[k], ys[k]);
+        for (int k = 0; k < n; k++)
+            temperatureOut[k] = lightOut[k] * maxLightTemperature;
     }
 
     public void setCellLight(int x, int y, float light) {
         lightMap[x][y] = light;
+        baseLightStale = true;
     }
 
     public Vector2 toEnvironmentCoords(int i, int j) {
@@ -0,0 +1,300 @@
+package com.protoevo.env;
+
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.physics.BinGrid;
+import com.protoevo.utils.Colour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Casts vision rays from a cell against the cells and rocks around it.
+ * <br>
+ * Once per tick, {@link #gather} collects everything within range of the viewer from the
+ * environment's {@link Chunks} into flat arrays and bins them into a small local grid, so
+ * all of the viewer's photoreceptors share one gather. Each ray then walks only the bins
+ * it passes through (DDA), nearest first, and stops as soon as no later bin can hold a
+ * closer hit. Candidates can additionally be culled per photoreceptor by field of view.
+ * <br>
+ * Not thread-safe: each viewer owns its own caster.
+ */
+public final class RayCaster {
+
+    private static final int MAX_BINS_PER_AXIS = 16;
+
+    private Cell viewer;
+    private float gatheredTime = Float.NaN, gatheredRange = Float.NaN;
+
+    // Candidate circles, and rock edges packed as (startX, startY, dirX, dirY)
+    private int nCircles, nEdges;
+    private float[] circleX = new float[16], circleY = new float[16], circleR = new float[16];
+    private float[] edges = new float[64];
+    private Colour[] circleColours = new Colour[16], edgeColours = new Colour[16];
+    private final List<Rock> gatheredRocks = new ArrayList<>();
+
+    // Items in each bin, with circles stored as their index and edges as ~index
+    private final BinGrid bins = new BinGrid();
+
+    private int[] circleTestedStamps = new int[16], edgeTestedStamps = new int[16];
+    private int rayStamp = 0;
+    private boolean[] circleCulled = new boolean[16];
+
+    private float hitT, hitX, hitY;
+    private Colour hitColour;
+
+    /**
+     * Collects the cells and rocks that a ray of the given length from anywhere on the
+     * viewer could hit. Repeated calls within the same tick reuse the previous gather.
+     */
+    public void gather(Cell viewer, Environment environment, float range) {
+        float time = environment.getElapsedTime();
+        if (this.viewer == viewer && time == gatheredTime && range == gatheredRange)
+            return;
+        this.viewer = viewer;
+        gatheredTime = time;
+        gatheredRange = range;
+
+        Vector2 pos = viewer.getPos();
+        float px = pos.x, py = pos.y;
+        float maxRadius = Environment.settings.maxParticleRadius.get();
+        float reach = range + maxRadius;
+
+        nCircles = 0;
+        environment.getChunks().forEachCellInBox(
+                px - reach, py - reach, px + reach, py + reach, cell -> {
+                    if (cell == viewer)
+                        return;
+                    Vector2 p = cell.getPos();
+                    float r = cell.getRadius();
+                    float dx = p.x - px, dy = p.y - py;
+                    if (dx * dx + dy * dy > (range + r) * (range + r))
+                        return;
+                    addCircle(p.x, p.y, r, cell.getColour());
+                });
+
+        nEdges = 0;
+        gatheredRocks.clear();
+        environment.getChunks().forEachRockInBox(
+                px - range, py - range, px + range, py + range, rock -> {
+                    // rocks are indexed in every chunk they overlap
+                    if (gatheredRocks.contains(rock))
+                        return;
+                    gatheredRocks.add(rock);
+                    Vector2[][] rockEdges = rock.getEdges();
+                    for (int i = 0; i < rockEdges.length; i++) {
+                        if (rock.isEdgeAttached(i))
+                            continue;
+                        Vector2 start = rockEdges[i][0], end = rockEdges[i][1];
+                        addEdge(start.x, start.y, end.x - start.x, end.y - start.y, rock.getColour());
+                    }
+                });
+
+        buildBins(px, py, range, maxRadius);
+        Arrays.fill(circleCulled, 0, nCircles, false);
+    }
+
+    private void addCircle(float x, float y, float r, Colour colour) {
+        if (nCircles == circleX.length) {
+            int capacity = 2 * nCircles;
+            circleX = Arrays.copyOf(circleX, capacity);
+            circleY = Arrays.copyOf(circleY, capacity);
+            circleR = Arrays.copyOf(circleR, capacity);
+            circleColours = Arrays.copyOf(circleColours, capacity);
+            circleTestedStamps = Arrays.copyOf(circleTestedStamps, capacity);
+            circleCulled = Arrays.copyOf(circleCulled, capacity);
+        }
+        circleX[nCircles] = x;
+        circleY[nCircles] = y;
+        circleR[nCircles] = r;
+        circleColours[nCircles] = colour;
+        nCircles++;
+    }
+
+    private void addEdge(float x, float y, float dx, float dy, Colour colour) {
+        if (nEdges == edgeColours.length) {
+            int capacity = 2 * nEdges;
+            edges = Arrays.copyOf(edges, 4 * capacity);
+            edgeColours = Arrays.copyOf(edgeColours, capacity);
+            edgeTestedStamps = Arrays.copyOf(edgeTestedStamps, capacity);
+        }
+        edges[4 * nEdges] = x;
+        edges[4 * nEdges + 1] = y;
+        edges[4 * nEdges + 2] = dx;
+        edges[4 * nEdges + 3] = dy;
+        edgeColours[nEdges] = colour;
+        nEdges++;
+    }
+
+    private void buildBins(float px, float py, float range, float maxRadius) {
+        float binSize = Math.max(2 * maxRadius, 2 * range / MAX_BINS_PER_AXIS);
+        int binsPerAxis = Math.min(MAX_BINS_PER_AXIS, (int) Math.ceil(2 * range / binSize));
+        float halfExtent = 0.5f * Math.max(1, binsPerAxis) * binSize;
+        bins.reset(px - halfExtent, py - halfExtent, binSize, binsPerAxis);
+
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1)
+                bins.beginFill();
+            for (int k = 0; k < nCircles; k++) {
+                float r = circleR[k];
+                binItem(k, circleX[k] - r, circleY[k] - r, circleX[k] + r, circleY[k] + r, pass == 1);
+            }
+            for (int e = 0; e < nEdges; e++) {
+                float x0 = edges[4*e], y0 = edges[4*e + 1];
+                float x1 = x0 + edges[4*e + 2], y1 = y0 + edges[4*e + 3];
+                binItem(~e, Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1), pass == 1);
+            }
+        }
+        bins.endFill();
+    }
+
+    private void binItem(int item, float minX, float minY, float maxX, float maxY, boolean fill) {
+        if (fill)
+            bins.fillBox(item, minX, minY, maxX, maxY);
+        else
+            bins.countBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Culls the gathered cells that lie entirely outside the cone with its apex at the
+     * viewer's centre, pointing along (dirX, dirY), with the given half-angle. The cone
+     * must contain every ray cast until the next call.
+     */
+    public void cullOutsideCone(float dirX, float dirY, float halfAngle) {
+        Vector2 pos = viewer.getPos();
+        float dirLen = (float) Math.sqrt(dirX * dirX + dirY * dirY);
+        for (int k = 0; k < nCircles; k++) {
+            float dx = circleX[k] - pos.x, dy = circleY[k] - pos.y;
+            float dist = (float) Math.sqrt(dx * dx + dy * dy);
+            float r = circleR[k];
+            if (dist <= r || dirLen == 0) {
+                circleCulled[k] = false;
+                continue;
+            }
+            float angle = (float) Math.atan2(Math.abs(dirX * dy - dirY * dx), dirX * dx + dirY * dy);
+            float margin = (float) Math.asin(r / dist);
+            circleCulled[k] = angle > halfAngle + margin;
+        }
+    }
+
+    /**
+     * Finds the nearest gathered object hit by the ray from (x0, y0) to (x1, y1).
+     *
+     * @return whether anything was hit, in which case the hit is available from
+     * {@link #getHitT}, {@link #getHitX}, {@link #getHitY} and {@link #getHitColour}
+     */
+    public boolean cast(float x0, float y0, float x1, float y1) {
+        float dx = x1 - x0, dy = y1 - y0;
+        rayStamp++;
+        hitT = Float.MAX_VALUE;
+        hitColour = null;
+
+        float binSize = bins.getBinSize();
+        int binsPerAxis = bins.getBinsPerAxis();
+        int i = bins.getBinX(x0), j = bins.getBinY(y0);
+        int iEnd = bins.getBinX(x1), jEnd = bins.getBinY(y1);
+        int stepI = dx > 0 ? 1 : -1, stepJ = dy > 0 ? 1 : -1;
+        float tDeltaX = dx != 0 ? Math.abs(binSize / dx) : Float.MAX_VALUE;
+        float tDeltaY = dy != 0 ? Math.abs(binSize / dy) : Float.MAX_VALUE;
+        float nextBoundaryX = bins.getOriginX() + (dx > 0 ? i + 1 : i) * binSize;
+        float nextBoundaryY = bins.getOriginY() + (dy > 0 ? j + 1 : j) * binSize;
+        float tMaxX = dx != 0 ? (nextBoundaryX - x0) / dx : Float.MAX_VALUE;
+        float tMaxY = dy != 0 ? (nextBoundaryY - y0) / dy : Float.MAX_VALUE;
+
+        while (true) {
+            testBin(bins.getBin(i, j), x0, y0, dx, dy);
+            float tExit = Math.min(tMaxX, tMaxY);
+            if (hitT <= tExit || (i == iEnd && j == jEnd))
+                break;
+            if (tMaxX < tMaxY) {
+                i += stepI;
+                tMaxX += tDeltaX;
+            } else {
+                j += stepJ;
+                tMaxY += tDeltaY;
+            }
+            if (i < 0 || i >= binsPerAxis || j < 0 || j >= binsPerAxis)
+                break;
+        }
+
+        if (hitColour == null)
+            return false;
+        hitX = x0 + hitT * dx;
+        hitY = y0 + hitT * dy;
+        return true;
+    }
+
+    private void testBin(int bin, float x0, float y0, float dx, float dy) {
+        for (int idx = bins.getBinStart(bin); idx < bins.getBinEnd(bin); idx++) {
+            int item = bins.getItem(idx);
+            if (item >= 0) {
+                if (circleTestedStamps[item] == rayStamp || circleCulled[item])
+                    continue;
+                circleTestedStamps[item] = rayStamp;
+                testCircle(item, x0, y0, dx, dy);
+            } else {
+                int e = ~item;
+                if (edgeTestedStamps[e] == rayStamp)
+                    continue;
+                edgeTestedStamps[e] = rayStamp;
+                testEdge(e, x0, y0, dx, dy);
+            }
+        }
+    }
+
+    private void testCircle(int k, float x0, float y0, float dx, float dy) {
+        float fx = x0 - circleX[k], fy = y0 - circleY[k];
+        float r = circleR[k];
+        float a = dx * dx + dy * dy;
+        float b = 2 * (dx * fx + dy * fy);
+        float c = fx * fx + fy * fy - r * r;
+        float d = b * b - 4 * a * c;
+        if (d <= 0 || a == 0)
+            return;
+        float sqrtD = (float) Math.sqrt(d);
+        float tNear = (-b - sqrtD) / (2 * a);
+        float tFar = (-b + sqrtD) / (2 * a);
+        float t = tNear >= 0 ? tNear : tFar;
+        if (0 <= t && t <= 1 && t < hitT) {
+            hitT = t;
+            hitColour = circleColours[k];
+        }
+    }
+
+    private void testEdge(int e, float x0, float y0, float dx, float dy) {
+        // Same solution as Rock.edgesIntersectCoef, with the ray as the first edge
+        float qx = edges[4*e], qy = edges[4*e + 1];
+        float ex = edges[4*e + 2], ey = edges[4*e + 3];
+        float coef00 = dx * dx + dy * dy;
+        float coef01 = -(dx * ex + dy * ey);
+        float coef11 = ex * ex + ey * ey;
+        float const0 = (qx * dx + qy * dy) - (x0 * dx + y0 * dy);
+        float const1 = (x0 * ex + y0 * ey) - (qx * ex + qy * ey);
+        float det = coef00 * coef11 - coef01 * coef01;
+        if (det == 0)
+            return;
+        float t = (const0 * coef11 - const1 * coef01) / det;
+        float s = (-const0 * coef01 + const1 * coef00) / det;
+        if (0f < t && t < 1f && 0f < s && s < 1f && t < hitT) {
+            hitT = t;
+            hitColour = edgeColours[e];
+        }
+    }
+
+    public float getHitT() {
+        return hitT;
+    }
+
+    public float getHitX() {
+        return hitX;
+    }
+
+    public float getHitY() {
+        return hitY;
+    }
+
+    public Colour getHitColour() {
+        return hitColour;
+    }
+}
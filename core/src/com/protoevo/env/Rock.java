@@ -122,6 +122,22 @@ public class Rock implements Serializable, Shape, Coloured {
         return !(hasNeg && hasPos);
     }
 
+    public boolean overlapsCircle(Vector2 pos, float r) {
+        if (pointInside(pos))
+            return true;
+        float r2 = r * r;
+        for (Vector2[] edge : edges) {
+            Vector2 a = edge[0], b = edge[1];
+            float ex = b.x - a.x, ey = b.y - a.y;
+            float len2 = ex * ex + ey * ey;
+            float t = len2 > 0 ? MathUtils.clamp(((pos.x - a.x) * ex + (pos.y - a.y) * ey) / len2, 0f, 1f) : 0f;
+            float dx = pos.x - (a.x + t * ex), dy = pos.y - (a.y + t * ey);
+            if (dx * dx + dy * dy < r2)
+                return true;
+        }
+        return false;
+    }
+
     private final float[] intersectTs = new float[2];
     @Override
     public boolean rayCollisions(Vector2[] ray, Intersection[] intersections) {
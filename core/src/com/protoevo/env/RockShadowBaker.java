@@ -0,0 +1,214 @@
+package com.protoevo.env;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.maths.Functions;
+import com.protoevo.utils.FileIO;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Bakes the shadows cast by rocks into a {@link LightManager}'s light map.
+ * <br>
+ * Each texel casts rays in {@link #LIGHT_SAMPLES} directions and is darkened by how soon
+ * they hit a rock edge. The light map is split into tiles, and for each tile the edges of
+ * the rocks that any of its rays could reach are gathered into flat arrays up front, so
+ * tiles can be baked in parallel without sharing any state.
+ * <br>
+ * Baked maps are cached on disk, keyed by the world seed and a hash of the rocks and light
+ * map layout, so reloading or recreating the same world skips the bake.
+ */
+final class RockShadowBaker {
+
+    static final int LIGHT_SAMPLES = 16;
+    private static final int TILE_SIZE = 16;
+    private static final int CACHE_MAGIC = 0x50455348;
+    private static final int CACHE_VERSION = 1;
+
+    private final LightManager lightManager;
+    private final List<Rock> rocks;
+    private final float rayLen;
+    private final float[] rayDirX = new float[LIGHT_SAMPLES], rayDirY = new float[LIGHT_SAMPLES];
+
+    RockShadowBaker(LightManager lightManager, List<Rock> rocks, float rayLen) {
+        this.lightManager = lightManager;
+        this.rocks = rocks;
+        this.rayLen = rayLen;
+        for (int a = 0; a < LIGHT_SAMPLES; a++) {
+            float angle = (float) (a * Math.PI * 2 / LIGHT_SAMPLES);
+            rayDirX[a] = MathUtils.cos(angle) * rayLen;
+            rayDirY[a] = MathUtils.sin(angle) * rayLen;
+        }
+    }
+
+    void bake() {
+        boolean useCache = Environment.settings.worldgen.cacheRockShadows.get();
+        Path cacheFile = useCache ? getCacheFile() : null;
+        if (useCache && readCache(cacheFile))
+            return;
+
+        int tilesX = (lightManager.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (lightManager.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        IntStream.range(0, tilesX * tilesY).parallel()
+                .forEach(tile -> bakeTile(tile % tilesX, tile / tilesX));
+
+        if (useCache)
+            writeCache(cacheFile);
+    }
+
+    private void bakeTile(int tx, int ty) {
+        int xStart = tx * TILE_SIZE, xEnd = Math.min(lightManager.getWidth(), xStart + TILE_SIZE);
+        int yStart = ty * TILE_SIZE, yEnd = Math.min(lightManager.getHeight(), yStart + TILE_SIZE);
+        float cellSizeX = lightManager.getFieldWidth() / lightManager.getWidth();
+        float cellSizeY = lightManager.getFieldHeight() / lightManager.getHeight();
+
+        // Candidate edges: those of rocks whose bounds come within a ray's length of the tile
+        float minX = lightManager.getXMin() + xStart * cellSizeX - rayLen;
+        float maxX = lightManager.getXMin() + xEnd * cellSizeX + rayLen;
+        float minY = lightManager.getYMin() + yStart * cellSizeY - rayLen;
+        float maxY = lightManager.getYMin() + yEnd * cellSizeY + rayLen;
+        float[] edges = collectEdges(minX, maxX, minY, maxY);
+        int nEdges = edges.length / 4;
+
+        for (int x = xStart; x < xEnd; x++) {
+            for (int y = yStart; y < yEnd; y++) {
+                float px = lightManager.getXMin() + (0.5f + x) * cellSizeX;
+                float py = lightManager.getYMin() + (0.5f + y) * cellSizeY;
+
+                float collisionValue = 0f;
+                for (int a = 0; a < LIGHT_SAMPLES; a++) {
+                    float rx = rayDirX[a], ry = rayDirY[a];
+                    float closest = 1f;
+                    float coef00 = rx * rx + ry * ry;
+                    float rayStart = px * rx + py * ry;
+                    for (int e = 0; e < nEdges; e++) {
+                        // Same solution as Rock.edgesIntersectCoef, with the ray as the first edge
+                        float qx = edges[4*e], qy = edges[4*e + 1];
+                        float ex = edges[4*e + 2], ey = edges[4*e + 3];
+                        float coef01 = -(rx * ex + ry * ey);
+                        float coef11 = ex * ex + ey * ey;
+                        float const0 = (qx * rx + qy * ry) - rayStart;
+                        float const1 = (px * ex + py * ey) - (qx * ex + qy * ey);
+                        float det = coef00 * coef11 - coef01 * coef01;
+                        if (det == 0)
+                            continue;
+                        float t = (const0 * coef11 - const1 * coef01) / det;
+                        float s = (-const0 * coef01 + const1 * coef00) / det;
+                        if (0f < t && t < closest && 0f < s && s < 1f)
+                            closest = t;
+                    }
+                    collisionValue += 1 - closest;
+                }
+
+                collisionValue /= LIGHT_SAMPLES;
+                float t = 0.25f;
+                float light = Functions.clampedLinearRemap(collisionValue, t, 1 - t, 1, 0);
+                lightManager.setCellLight(x, y, light);
+            }
+        }
+    }
+
+    /**
+     * @return the unattached edges of rocks overlapping the given bounds, packed as
+     * (startX, startY, dirX, dirY)
+     */
+    private float[] collectEdges(float minX, float maxX, float minY, float maxY) {
+        List<float[]> edgeList = new ArrayList<>();
+        for (Rock rock : rocks) {
+            Vector2[] bounds = rock.getBoundingBox();
+            if (bounds[1].x < minX || bounds[0].x > maxX || bounds[1].y < minY || bounds[0].y > maxY)
+                continue;
+            Vector2[][] rockEdges = rock.getEdges();
+            for (int i = 0; i < rockEdges.length; i++) {
+                if (rock.isEdgeAttached(i))
+                    continue;
+                Vector2 start = rockEdges[i][0], end = rockEdges[i][1];
+                edgeList.add(new float[]{start.x, start.y, end.x - start.x, end.y - start.y});
+            }
+        }
+        float[] edges = new float[4 * edgeList.size()];
+        for (int e = 0; e < edgeList.size(); e++)
+            System.arraycopy(edgeList.get(e), 0, edges, 4 * e, 4);
+        return edges;
+    }
+
+    private long getCacheKey() {
+        long hash = 17;
+        hash = 31 * hash + lightManager.getWidth();
+        hash = 31 * hash + lightManager.getHeight();
+        hash = 31 * hash + Float.floatToIntBits(lightManager.getXMin());
+        hash = 31 * hash + Float.floatToIntBits(lightManager.getXMax());
+        hash = 31 * hash + Float.floatToIntBits(lightManager.getYMin());
+        hash = 31 * hash + Float.floatToIntBits(lightManager.getYMax());
+        hash = 31 * hash + Float.floatToIntBits(rayLen);
+        hash = 31 * hash + LIGHT_SAMPLES;
+        for (Rock rock : rocks) {
+            for (Vector2 p : rock.getPoints()) {
+                hash = 31 * hash + Float.floatToIntBits(p.x);
+                hash = 31 * hash + Float.floatToIntBits(p.y);
+            }
+            for (int i = 0; i < rock.getEdges().length; i++)
+                hash = 31 * hash + (rock.isEdgeAttached(i) ? 1 : 0);
+        }
+        return hash;
+    }
+
+    private Path getCacheFile() {
+        return FileIO.getCacheDir().resolve(String.format(
+                "shadows-%d-%016x.bin", Environment.settings.worldgen.seed.get(), getCacheKey()));
+    }
+
+    private boolean readCache(Path cacheFile) {
+        if (!Files.exists(cacheFile))
+            return false;
+
+        int width = lightManager.getWidth(), height = lightManager.getHeight();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION
+                    || in.readLong() != getCacheKey()
+                    || in.readInt() != width || in.readInt() != height)
+                return false;
+
+            float[] light = new float[width * height];
+            for (int i = 0; i < light.length; i++)
+                light[i] = in.readFloat();
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++)
+                    lightManager.setCellLight(x, y, light[x * height + y]);
+            System.out.println("Loaded baked shadows from " + cacheFile);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Failed to read baked shadows from " + cacheFile + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeCache(Path cacheFile) {
+        int width = lightManager.getWidth(), height = lightManager.getHeight();
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmpFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeLong(getCacheKey());
+                out.writeInt(width);
+                out.writeInt(height);
+                for (int x = 0; x < width; x++)
+                    for (int y = 0; y < height; y++)
+                        out.writeFloat(lightManager.getCellLight(x, y));
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Failed to cache baked shadows to " + cacheFile + ": " + e.getMessage());
+        }
+    }
+}
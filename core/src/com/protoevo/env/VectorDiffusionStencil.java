@@ -0,0 +1,106 @@
+package com.protoevo.env;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of {@link DiffusionStencil#diffuseRegion}, computing the same separable
+ * 3x3 stencil a full vector of texels at a time. The first and last column of each row,
+ * which are missing a neighbour, and any remainder shorter than a vector fall back to the
+ * scalar code.
+ * <br>
+ * Only loaded when the {@code jdk.incubator.vector} module is present.
+ */
+final class VectorDiffusionStencil {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorDiffusionStencil() {}
+
+    static void diffuseRegion(float[] r, float[] g, float[] b, float[] a,
+                              float[] outR, float[] outG, float[] outB, float[] outA,
+                              float[] decay, int width, int height,
+                              int xStart, int xEnd, int yStart, int yEnd) {
+        DiffusionStencil.ScratchRows rows = DiffusionStencil.getScratchRows(width);
+        float[] sumR = rows.sumR, sumG = rows.sumG, sumB = rows.sumB, sumA = rows.sumA;
+        int sumStart = Math.max(0, xStart - 1), sumEnd = Math.min(width, xEnd + 1);
+        int vectorStart = Math.max(1, xStart), vectorEnd = Math.min(width - 1, xEnd);
+
+        for (int y = yStart; y < yEnd; y++) {
+            sumVertical(r, g, b, a, sumR, sumG, sumB, sumA, width, height, sumStart, sumEnd, y);
+
+            int row = y * width;
+            int x = xStart;
+            for (; x < vectorStart && x < xEnd; x++)
+                DiffusionStencil.horizontalTexel(
+                        sumR, sumG, sumB, sumA, outR, outG, outB, outA, decay, width, row, x);
+
+            int upperBound = x + SPECIES.loopBound(Math.max(0, vectorEnd - x));
+            for (; x < upperBound; x += SPECIES.length()) {
+                FloatVector sa = horizontalSum(sumA, x);
+                FloatVector sr = horizontalSum(sumR, x);
+                FloatVector sg = horizontalSum(sumG, x);
+                FloatVector sb = horizontalSum(sumB, x);
+                FloatVector d = FloatVector.fromArray(SPECIES, decay, row + x);
+
+                FloatVector finalAlpha = d.mul(sa).div(DiffusionStencil.FILTER_AREA);
+                finalAlpha.intoArray(outA, row + x);
+
+                // where the alpha is too low the colour is cleared, which also hides the
+                // division by a zero alpha sum
+                VectorMask<Float> faded = finalAlpha.compare(VectorOperators.LT, DiffusionStencil.MIN_ALPHA);
+                FloatVector scale = d.div(sa).blend(0f, faded);
+                sr.mul(scale).intoArray(outR, row + x);
+                sg.mul(scale).intoArray(outG, row + x);
+                sb.mul(scale).intoArray(outB, row + x);
+            }
+
+            for (; x < xEnd; x++)
+                DiffusionStencil.horizontalTexel(
+                        sumR, sumG, sumB, sumA, outR, outG, outB, outA, decay, width, row, x);
+        }
+    }
+
+    private static FloatVector horizontalSum(float[] sums, int x) {
+        return FloatVector.fromArray(SPECIES, sums, x - 1)
+                .add(FloatVector.fromArray(SPECIES, sums, x))
+                .add(FloatVector.fromArray(SPECIES, sums, x + 1));
+    }
+
+    private static void sumVertical(float[] r, float[] g, float[] b, float[] a,
+                                    float[] sumR, float[] sumG, float[] sumB, float[] sumA,
+                                    int width, int height, int xStart, int xEnd, int y) {
+        int yMin = Math.max(0, y - 1), yMax = Math.min(height - 1, y + 1);
+        int upperBound = xStart + SPECIES.loopBound(xEnd - xStart);
+        for (int yy = yMin; yy <= yMax; yy++) {
+            int row = yy * width;
+            boolean first = yy == yMin;
+            int x = xStart;
+            for (; x < upperBound; x += SPECIES.length()) {
+                FloatVector alpha = FloatVector.fromArray(SPECIES, a, row + x);
+                FloatVector red = FloatVector.fromArray(SPECIES, r, row + x).mul(alpha);
+                FloatVector green = FloatVector.fromArray(SPECIES, g, row + x).mul(alpha);
+                FloatVector blue = FloatVector.fromArray(SPECIES, b, row + x).mul(alpha);
+                if (!first) {
+                    alpha = alpha.add(FloatVector.fromArray(SPECIES, sumA, x));
+                    red = red.add(FloatVector.fromArray(SPECIES, sumR, x));
+                    green = green.add(FloatVector.fromArray(SPECIES, sumG, x));
+                    blue = blue.add(FloatVector.fromArray(SPECIES, sumB, x));
+                }
+                alpha.intoArray(sumA, x);
+                red.intoArray(sumR, x);
+                green.intoArray(sumG, x);
+                blue.intoArray(sumB, x);
+            }
+            for (; x < xEnd; x++) {
+                float alpha = a[row + x];
+                sumA[x] = first ? alpha : sumA[x] + alpha;
+                sumR[x] = first ? r[row + x] * alpha : sumR[x] + r[row + x] * alpha;
+                sumG[x] = first ? g[row + x] * alpha : sumG[x] + g[row + x] * alpha;
+                sumB[x] = first ? b[row + x] * alpha : sumB[x] + b[row + x] * alpha;
+            }
+        }
+    }
+}
@@ -23,6 +23,9 @@ import com.protoevo.physics.box2d.Box2DCollisionHandler;
 import com.protoevo.physics.box2d.Box2DJointsManager;
 import com.protoevo.physics.box2d.Box2DParticle;
 import com.protoevo.physics.box2d.Box2DPhysics;
+import com.protoevo.physics.fast.FastJointsManager;
+import com.protoevo.physics.fast.FastParticle;
+import com.protoevo.physics.fast.FastPhysics;
 import com.protoevo.settings.*;
 import com.protoevo.utils.Colour;
 import com.protoevo.utils.SerializableFunction;
@@ -111,6 +114,9 @@ public class KryoSerialization {
         kryo.register(Box2DPhysics.class);
         kryo.register(Box2DParticle.class);
         kryo.register(Box2DJointsManager.class);
+        kryo.register(FastPhysics.class);
+        kryo.register(FastParticle.class);
+        kryo.register(FastJointsManager.class);
         kryo.register(Collision.class);
         kryo.register(Shape.class);
         kryo.register(Shape.Intersection.class);
@@ -0,0 +1,151 @@
+package com.protoevo.physics;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of square bins holding item indices, rebuilt from scratch with a counting
+ * sort whenever the items move. Unlike {@link UniformGrid} nothing is added or removed
+ * individually, so the items of each bin are stored contiguously in one array and a full
+ * rebuild does not allocate once the grid has reached its working size.
+ * <br>
+ * Points are binned with {@link #binPoints}. Items with an extent are binned into every
+ * bin their bounding box overlaps, by calling {@link #countBox} for each of them, then
+ * {@link #beginFill}, then {@link #fillBox} for each of them in any order, then
+ * {@link #endFill}. The items of a bin are then read with {@link #getBinStart},
+ * {@link #getBinEnd} and {@link #getItem}.
+ * <br>
+ * Rebuilding is not thread-safe; concurrent reads are safe while no rebuild is happening.
+ */
+public final class BinGrid {
+
+    private float originX, originY, binSize;
+    private int binsPerAxis = 1;
+    private int[] binStarts = new int[2], binItems = new int[0];
+
+    /**
+     * Sets the region covered by the grid, with its minimum corner at (originX, originY),
+     * and clears it ready for items to be counted.
+     */
+    public void reset(float originX, float originY, float binSize, int binsPerAxis) {
+        this.originX = originX;
+        this.originY = originY;
+        this.binSize = binSize;
+        this.binsPerAxis = Math.max(1, binsPerAxis);
+
+        int nBins = getBinCount();
+        if (binStarts.length < nBins + 1)
+            binStarts = new int[nBins + 1];
+        Arrays.fill(binStarts, 0, nBins + 1, 0);
+    }
+
+    /**
+     * Bins the points (xs[i], ys[i]) for i below n as the items 0 to n - 1, after a
+     * {@link #reset}. Points outside the grid go in the nearest bin.
+     */
+    public void binPoints(float[] xs, float[] ys, int n) {
+        for (int i = 0; i < n; i++)
+            binStarts[getBin(getBinX(xs[i]), getBinY(ys[i])) + 1]++;
+        beginFill();
+        for (int i = 0; i < n; i++)
+            binItems[binStarts[getBin(getBinX(xs[i]), getBinY(ys[i]))]++] = i;
+        endFill();
+    }
+
+    /**
+     * Counts an item in every bin overlapped by the given box. Boxes entirely outside
+     * the grid are not binned.
+     */
+    public void countBox(float minX, float minY, float maxX, float maxY) {
+        if (isOutside(minX, minY, maxX, maxY))
+            return;
+        int i0 = getBinX(minX), i1 = getBinX(maxX);
+        int j0 = getBinY(minY), j1 = getBinY(maxY);
+        for (int j = j0; j <= j1; j++)
+            for (int i = i0; i <= i1; i++)
+                binStarts[getBin(i, j) + 1]++;
+    }
+
+    /**
+     * Finishes counting, after which every counted box must be filled with the same bounds.
+     */
+    public void beginFill() {
+        int nBins = getBinCount();
+        for (int bin = 0; bin < nBins; bin++)
+            binStarts[bin + 1] += binStarts[bin];
+        if (binItems.length < binStarts[nBins])
+            binItems = new int[Math.max(binStarts[nBins], 2 * binItems.length)];
+    }
+
+    public void fillBox(int item, float minX, float minY, float maxX, float maxY) {
+        if (isOutside(minX, minY, maxX, maxY))
+            return;
+        int i0 = getBinX(minX), i1 = getBinX(maxX);
+        int j0 = getBinY(minY), j1 = getBinY(maxY);
+        for (int j = j0; j <= j1; j++)
+            for (int i = i0; i <= i1; i++)
+                binItems[binStarts[getBin(i, j)]++] = item;
+    }
+
+    public void endFill() {
+        // filling advanced each start to the next bin's start
+        int nBins = getBinCount();
+        System.arraycopy(binStarts, 0, binStarts, 1, nBins);
+        binStarts[0] = 0;
+    }
+
+    private boolean isOutside(float minX, float minY, float maxX, float maxY) {
+        float extent = binsPerAxis * binSize;
+        return minX - originX >= extent || maxX < originX
+                || minY - originY >= extent || maxY < originY;
+    }
+
+    /**
+     * @return the column containing x, clamped to the grid
+     */
+    public int getBinX(float x) {
+        return Math.max(0, Math.min(binsPerAxis - 1, (int) Math.floor((x - originX) / binSize)));
+    }
+
+    /**
+     * @return the row containing y, clamped to the grid
+     */
+    public int getBinY(float y) {
+        return Math.max(0, Math.min(binsPerAxis - 1, (int) Math.floor((y - originY) / binSize)));
+    }
+
+    public int getBin(int i, int j) {
+        return j * binsPerAxis + i;
+    }
+
+    public int getBinStart(int bin) {
+        return binStarts[bin];
+    }
+
+    public int getBinEnd(int bin) {
+        return binStarts[bin + 1];
+    }
+
+    public int getItem(int k) {
+        return binItems[k];
+    }
+
+    public int getBinsPerAxis() {
+        return binsPerAxis;
+    }
+
+    public int getBinCount() {
+        return binsPerAxis * binsPerAxis;
+    }
+
+    public float getBinSize() {
+        return binSize;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+}
@@ -0,0 +1,155 @@
+package com.protoevo.physics;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * The contacts of a particle, keyed by the object being touched.
+ * Collisions live in a dense array of slots that are reused once a contact ends,
+ * so beginning and ending contacts does not allocate once the table has grown
+ * to the particle's usual number of neighbours.
+ * <p>
+ * Contacts are only modified by the physics thread, but they may be iterated
+ * concurrently (e.g. by the renderer), so iteration tolerates the table changing
+ * underneath it rather than failing.
+ */
+public class ContactTable extends AbstractCollection<Collision> {
+
+    private Collision[] slots = new Collision[4];
+    private final ObjectIntMap<Object> slotOf = new ObjectIntMap<>();
+    private volatile int size = 0;
+
+    /**
+     * Records that owner is touching other at (x, y). If the contact already exists its point is updated.
+     * @return the collision stored in the table
+     */
+    public Collision put(Object owner, Object other, float x, float y) {
+        if (other == null)
+            throw new IllegalArgumentException("Cannot record a contact with null");
+        int idx = slotOf.get(other, -1);
+        if (idx < 0) {
+            idx = size;
+            if (idx == slots.length) {
+                Collision[] grown = new Collision[idx * 2];
+                System.arraycopy(slots, 0, grown, 0, idx);
+                slots = grown;
+            }
+            if (slots[idx] == null)
+                slots[idx] = new Collision(null, null, new Vector2());
+            slotOf.put(other, idx);
+            size = idx + 1;
+        }
+        Collision collision = slots[idx];
+        collision.objA = owner;
+        collision.objB = other;
+        collision.point.set(x, y);
+        return collision;
+    }
+
+    public boolean removeContactWith(Object other) {
+        if (other == null)
+            return false;
+        int idx = slotOf.remove(other, -1);
+        if (idx < 0)
+            return false;
+        removeSlot(idx);
+        return true;
+    }
+
+    public boolean isTouching(Object other) {
+        return other != null && slotOf.containsKey(other);
+    }
+
+    private void removeSlot(int idx) {
+        int last = size - 1;
+        if (idx != last) {
+            // swap the last contact into the freed slot, keeping the removed collision for reuse
+            Collision moved = slots[last];
+            slots[last] = slots[idx];
+            slots[idx] = moved;
+            slotOf.put(moved.objB, idx);
+        }
+        slots[last].objA = null;
+        slots[last].objB = null;
+        size = last;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Collision> filter) {
+        boolean removed = false;
+        int i = 0;
+        while (i < size) {
+            Collision collision = slots[i];
+            if (filter.test(collision)) {
+                slotOf.remove(collision.objB, -1);
+                removeSlot(i);
+                removed = true;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Collision))
+            return false;
+        Collision collision = (Collision) o;
+        int idx = slotOf.get(collision.objB, -1);
+        if (idx < 0 || slots[idx] != collision)
+            return false;
+        slotOf.remove(collision.objB, -1);
+        removeSlot(idx);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slots[i].objA = null;
+            slots[i].objB = null;
+        }
+        slotOf.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Collision> iterator() {
+        final Collision[] snapshot = slots;
+        final int n = Math.min(size, snapshot.length);
+        return new Iterator<Collision>() {
+            private int i = skipEnded(0);
+
+            private int skipEnded(int from) {
+                while (from < n && (snapshot[from] == null || snapshot[from].objB == null))
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            @Override
+            public Collision next() {
+                if (i >= n)
+                    throw new NoSuchElementException();
+                Collision collision = snapshot[i];
+                i = skipEnded(i + 1);
+                return collision;
+            }
+        };
+    }
+}
@@ -1,8 +1,6 @@
 package com.protoevo.physics;
 
 import com.badlogic.gdx.math.Vector2;
-import com.protoevo.physics.box2d.Box2DParticle;
-
 import java.io.Serializable;
 import java.util.Optional;
 
@@ -193,8 +191,8 @@ public class Joining implements Serializable {
         Optional<Particle> maybeB = getParticleB();
         if (!maybeA.isPresent() || !maybeB.isPresent())
             return 0;
-        Box2DParticle particleA = (Box2DParticle) maybeA.get();
-        Box2DParticle particleB = (Box2DParticle) maybeB.get();
+        Particle particleA = maybeA.get();
+        Particle particleB = maybeB.get();
 
         float len = JointsManager.idealJoinedParticleDistance(particleA, particleB);
         if (!anchoredA)
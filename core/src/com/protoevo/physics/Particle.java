@@ -1,22 +1,54 @@
 package com.protoevo.physics;
 
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.protoevo.biology.CauseOfDeath;
 import com.protoevo.core.Statistics;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Rock;
 import com.protoevo.maths.Geometry;
 import com.protoevo.maths.Shape;
 import com.protoevo.utils.Colour;
 
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * Circular particle, holding the state and logic that do not depend on the physics backend.
+ * Subclasses connect it to their solver: they push the queued forces, impulses and torque
+ * into the solver in {@link #physicsUpdate()}, read the solved state back, and report
+ * contacts and objects in interaction range.
+ */
 public abstract class Particle implements Serializable, Shape, Coloured {
     private static final long serialVersionUID = 1L;
 
     protected Physics physics;
     protected boolean rangedInteractionsEnabled = false;
+    protected final long id = UUID.randomUUID().getMostSignificantBits();
+
+    private final Vector2[] boundingBox = new Vector2[]{new Vector2(), new Vector2()};
+
+    private Object userData;
+    private final Map<Long, Long> joiningIds = new ConcurrentHashMap<>();  // maps cell id to joining id
+    protected boolean dead = false, disposed = false;
+    protected double radius = Environment.settings.minParticleRadius.get() * (1 + 2 * Math.random());
+    private float interactionRadius = 0f;
+    protected final Vector2 pos = new Vector2(0, 0);
+    protected final Vector2 impulseToApply = new Vector2(0, 0);
+    protected final Vector2 forceToApply = new Vector2(0, 0);
+    protected final Vector2 vel = new Vector2(0, 0);
+    protected final Vector2 tmp = new Vector2(0, 0);
+    protected float angle, torqueToApply = 0;
+    @JsonIgnore
+    private final Statistics stats = new Statistics();
+    protected transient ContactTable contacts = new ContactTable();
+    private final Collection<Object> interactionObjects = new ConcurrentLinkedQueue<>();
+    private CauseOfDeath causeOfDeath = null;
+    // Objects in interaction range as of the last query, and scratch for the next
+    private transient List<Object> sensing = new ArrayList<>(), nowSensing = new ArrayList<>();
 
     public Particle() {}
 
@@ -28,60 +60,106 @@ public abstract class Particle implements Serializable, Shape, Coloured {
         return physics;
     }
 
-    public abstract boolean isDead();
-    public abstract void update(float delta);
     public abstract void physicsUpdate();
-    public abstract float getRadius();
-    public abstract void setRadius(double r);
-    public abstract double getMassIfRadius(double r);
-    public abstract float getMass();
-    public abstract float getMassDensity();
-    public abstract Vector2 getPos();
-    public abstract Vector2 getVel();
-    public abstract float getAngle();
-    public abstract long getId();
-    public abstract void setPos(Vector2 pos);
-    public abstract void setAngle(float angle);
-    public abstract void applyImpulse(Vector2 impulse);
-    public abstract Vector2 getImpulse();
-    public abstract void applyForce(Vector2 force);
-    public abstract Vector2 getForce();
-    public abstract void applyTorque(float torque);
-    public abstract float getTorque();
+    public abstract void setVel(float vx, float vy);
+    public abstract void setVel(Vector2 vel);
+    public abstract void setAngularVel(float angularVel);
+
+    public void update(float delta) {
+        interactionObjects.removeIf(o -> (o instanceof Particle) && ((Particle) o).isDead());
+        contacts.removeIf(c -> (getOther(c) instanceof Particle) && ((Particle) getOther(c)).isDead());
+    }
+
+    public void rebuildTransientFields() {
+        if (contacts == null)
+            contacts = new ContactTable();
+        sensing = new ArrayList<>();
+        nowSensing = new ArrayList<>();
+    }
+
+    public Object getUserData() {
+        return userData;
+    }
+
+    public <T> T getUserData(Class<T> type) {
+        if (userData == null)
+            throw new NullPointerException("User data is null");
+        if (!type.isInstance(userData))
+            throw new ClassCastException("User data is not of type " + type.getName());
+        return type.cast(userData);
+    }
+
+    public void setUserData(Object userData) {
+        this.userData = userData;
+    }
 
     /**
      * @return A map from particle ids to joining ids
      */
-    public abstract Map<Long, Long> getJoiningIds();
+    public Map<Long, Long> getJoiningIds() {
+        return joiningIds;
+    }
 
-    public abstract Optional<Joining> getJoining(long joiningId);
-    public abstract void requestJointRemoval(Joining joining);
-    public abstract Collection<Collision> getContacts();
-    public abstract Collection<Object> getInteractionQueue();
-    public abstract Object getUserData();
-    public abstract <T> T getUserData(Class<T> type);
-    public abstract void setUserData(Object userData);
+    public Optional<Joining> getJoining(long joiningID) {
+        return physics.getJointsManager().getJoining(joiningID);
+    }
 
-    public abstract Statistics getStats();
-    public abstract Statistics getDebugStats();
+    public void requestJointRemoval(Joining joining) {
+        physics.getJointsManager().requestJointRemoval(joining);
+    }
 
-    public abstract void kill(CauseOfDeath causeOfDeath);
-    public abstract CauseOfDeath getCauseOfDeath();
-    public abstract void dispose();
+    public int getNumAttachedParticles() {
+        return joiningIds.size();
+    }
 
-    public float getSpeed() {
-        return getVel().len();
+    public float getDampeningFactor() {
+        if (getNumAttachedParticles() == 0 || getVel().len2() < 1e-12f)
+            return 1f;
+
+        float k = 0;
+        float speed = getSpeed();
+        for (long joiningId : joiningIds.values()) {
+            Optional<Particle> maybeOther = physics.getJointsManager()
+                    .getJoining(joiningId).flatMap(joining -> joining.getOther(this));
+            if (maybeOther.isPresent()) {
+                Particle otherParticle = maybeOther.get();
+                tmp.set(otherParticle.getPos()).sub(getPos()).nor();
+                k += tmp.dot(getVel()) / speed;
+            }
+            if (k >= 1)
+                return 0;
+        }
+
+        return MathUtils.clamp(1 - k, 0, 1);
     }
 
-    public float getArea() {
-        return Geometry.getCircleArea(getRadius());
+    public void applyForce(Vector2 force) {
+        forceToApply.add(force);
     }
 
-    public abstract void setVel(float vx, float vy);
-    public abstract void setVel(Vector2 vel);
-    public abstract void setAngularVel(float angularVel);
+    public void applyImpulse(Vector2 impulse) {
+        impulseToApply.add(impulse);
+    }
+
+    public void applyTorque(float v) {
+        torqueToApply += v;
+    }
+
+    public Vector2 getForce() {
+        return forceToApply;
+    }
 
-    public abstract void setRangedInteractionRadius(float radius);
+    public Vector2 getImpulse() {
+        return impulseToApply;
+    }
+
+    public float getTorque() {
+        return torqueToApply;
+    }
+
+    public void setRangedInteractionRadius(float radius) {
+        interactionRadius = radius;
+    }
 
     public void setCanInteractAtRange() {
         rangedInteractionsEnabled = true;
@@ -91,7 +169,243 @@ public abstract class Particle implements Serializable, Shape, Coloured {
         return rangedInteractionsEnabled;
     }
 
-    public abstract void rebuildTransientFields();
+    /**
+     * @return the radius within which objects are added to the interaction queue,
+     * or zero if the particle cannot interact at range
+     */
+    public float getSensorRadius() {
+        if (!rangedInteractionsEnabled)
+            return 0f;
+        return interactionRadius > getRadius() ? interactionRadius : getRadius() / 2f;
+    }
+
+    /**
+     * @return an empty list to collect the objects currently in interaction range into,
+     * before passing it to {@link #updateInteractions}
+     */
+    public List<Object> getSensingScratch() {
+        nowSensing.clear();
+        return nowSensing;
+    }
+
+    /**
+     * Adds the newly sensed objects to the interaction queue and removes those that have left range.
+     */
+    public void updateInteractions(List<Object> sensedObjects) {
+        for (Object object : sensedObjects)
+            if (!sensing.contains(object))
+                interactionObjects.add(object);
+        for (Object object : sensing)
+            if (!sensedObjects.contains(object))
+                interactionObjects.remove(object);
+
+        List<Object> swap = sensing;
+        sensing = sensedObjects;
+        nowSensing = swap;
+    }
+
+    public Collection<Object> getInteractionQueue() {
+        return interactionObjects;
+    }
+
+    public void onCollision(Particle other, Vector2 point) {
+        if (other.isPointInside(getPos())) {
+            kill(CauseOfDeath.SUFFOCATION);
+            return;
+        }
+
+        contacts.put(this, other, point.x, point.y);
+    }
+
+    public void onCollision(Rock rock, Vector2 point) {
+        if (rock.pointInside(getPos())) {
+            kill(CauseOfDeath.SUFFOCATION);
+            return;
+        }
+
+        contacts.put(this, rock, point.x, point.y);
+    }
+
+    public void endContact(Object object) {
+        contacts.removeContactWith(object);
+    }
+
+    public Object getOther(Collision collision) {
+        return collision.objB;
+    }
+
+    /**
+     * @return whether the collision has ended without the solver reporting it
+     */
+    protected boolean removeCollision(Collision collision) {
+        if (getOther(collision) == null)
+            return true;
+        if (getOther(collision) instanceof Particle) {
+            Particle other = (Particle) getOther(collision);
+            float rr = getRadius() + other.getRadius();
+            return other.isDead() || other.getPos().dst2(getPos()) > rr*rr;
+        }
+        return true;
+    }
+
+    public Collection<Collision> getContacts() {
+        return contacts;
+    }
+
+    public float getRadius() {
+        return (float) radius;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = Math.max(Environment.settings.minParticleRadius.get(), radius);
+        this.radius = Math.min(Environment.settings.maxParticleRadius.get(), this.radius);
+    }
+
+    public boolean isPointInside(Vector2 point) {
+        float r = getRadius();
+        return point.dst2(getPos()) < r*r;
+    }
+
+    public void setPos(Vector2 pos) {
+        this.pos.set(pos);
+    }
+
+    public void setAngle(float angle) {
+        this.angle = angle;
+    }
+
+    public float getAngle() {
+        return angle;
+    }
+
+    @Override
+    public Vector2 getPos() {
+        return pos;
+    }
+
+    public Vector2 getVel() {
+        return vel;
+    }
+
+    public float getSpeed() {
+        return getVel().len();
+    }
+
+    public float getArea() {
+        return Geometry.getCircleArea(getRadius());
+    }
+
+    public float getMass() {
+        return (float) getMassIfRadius(getRadius());
+    }
+
+    public double getMassIfRadius(double r) {
+        return Geometry.getCircleArea(r) * getMassDensity();
+    }
+
+    public float getMassDensity() {
+        return Environment.settings.cell.basicParticleMassDensity.get();
+    }
+
+    @Override
+    public boolean pointInside(Vector2 p) {
+        return Geometry.isPointInsideCircle(getPos(), getRadius(), p);
+    }
+
+    @Override
+    public boolean rayCollisions(Vector2[] ray, Intersection[] intersection) {
+        Vector2 start = ray[0], end = ray[1];
+        float dirX = end.x - start.x, dirY = end.y - start.y;
+        Vector2 p = getPos();
+        float r = getRadius();
+
+        float a = start.dst2(end);
+        float b = 2 * (dirX*(start.x - p.x) + dirY*(start.y - p.y));
+        float c = p.len2() + start.len2() - r*r - 2 * p.dot(start);
+
+        float d = b*b - 4*a*c;
+        if (d == 0)
+            return false;
+
+        float t1 = (float) ((-b + Math.sqrt(d)) / (2*a));
+        float t2 = (float) ((-b - Math.sqrt(d)) / (2*a));
+
+        boolean anyCollisions = false;
+        if (0 <= t1 && t1 <= 1) {
+            intersection[0].point.set(start).lerp(end, t1);
+            intersection[0].didCollide = true;
+            anyCollisions = true;
+        }
+        if (0 <= t2 && t2 <= 1) {
+            intersection[1].point.set(start).lerp(end, t2);
+            intersection[1].didCollide = true;
+            anyCollisions = true;
+        }
+        return anyCollisions;
+    }
+
+    @Override
+    public Vector2[] getBoundingBox() {
+        float x = getPos().x;
+        float y = getPos().y;
+        float r = getRadius();
+        boundingBox[0].set(x - r, y - r);
+        boundingBox[1].set(x + r, y + r);
+        return boundingBox;
+    }
+
+    public Statistics getStats() {
+        stats.clear();
+        stats.putDistance("Size", getRadius());
+        stats.putSpeed("Speed", getSpeed());
+        stats.putMass("Total Mass", getMass());
+        return stats;
+    }
+
+    public Statistics getDebugStats() {
+        Statistics stats = new Statistics();
+        stats.putDistance("Position X", getPos().x);
+        stats.putDistance("Position Y", getPos().y);
+        stats.putBoolean("Is Dead", dead);
+        stats.putCount("Num Contacts", contacts.size());
+        stats.putCount("Num Interactions", interactionObjects.size());
+        stats.put("Dampening Factor", getDampeningFactor());
+        return stats;
+    }
+
+    public String getPrettyName() {
+        return "Particle";
+    }
+
+    public boolean isDead() {
+        return dead;
+    }
+
+    public void kill(CauseOfDeath causeOfDeath) {
+        dead = true;
+        if (this.causeOfDeath == null)
+            this.causeOfDeath = causeOfDeath;
+    }
+
+    public CauseOfDeath getCauseOfDeath() {
+        return causeOfDeath;
+    }
+
+    public void dispose() {
+        if (disposed)
+            return;
+        disposed = true;
+        kill(CauseOfDeath.DISPOSED);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
 
     @Override
     public Colour getColour() {
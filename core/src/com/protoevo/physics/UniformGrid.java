@@ -0,0 +1,280 @@
+package com.protoevo.physics;
+
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Fixed resolution grid over a square region centred on the origin.
+ * <br>
+ * Each chunk stores its contents in a dense array, so objects can be added, removed and
+ * moved between chunks individually. Callers are expected to remember which chunk each
+ * object was inserted into (the index is returned by {@link #add}) and only call
+ * {@link #move} when that changes. Chunk arrays grow geometrically and are kept when
+ * the grid is cleared, so a grid that has reached its working size does not allocate.
+ * <br>
+ * If the objects can store their slot within a chunk (see {@link #UniformGrid(int, int, float,
+ * ToIntFunction, ObjIntConsumer)}) removal is O(1), otherwise it scans the chunk.
+ * <br>
+ * Writes are not thread-safe; concurrent reads are safe while no writes are happening.
+ */
+public class UniformGrid<T> {
+
+    private final int resolution;
+    private final float chunkSize, originX, originY;
+    private final int maxObjectsPerChunk;
+
+    private final Object[][] chunkObjects;
+    private final int[] chunkCounts;
+    private int size = 0;
+    private final ToIntFunction<? super T> slotGetter;
+    private final ObjIntConsumer<? super T> slotSetter;
+
+    /**
+     * @param slotGetter returns the slot last given to the object by slotSetter
+     * @param slotSetter stores the object's slot in its chunk, or -1 when it is removed
+     */
+    public UniformGrid(int resolution, int maxObjectsPerChunk, float radius,
+                       ToIntFunction<? super T> slotGetter, ObjIntConsumer<? super T> slotSetter) {
+        this.slotGetter = slotGetter;
+        this.slotSetter = slotSetter;
+        this.resolution = resolution;
+        this.maxObjectsPerChunk = maxObjectsPerChunk;
+        this.chunkSize = 2 * radius / resolution;
+        this.originX = -radius;
+        this.originY = -radius;
+        this.chunkObjects = new Object[resolution * resolution][];
+        this.chunkCounts = new int[resolution * resolution];
+    }
+
+    public UniformGrid(int resolution, int maxObjectsPerChunk, float radius) {
+        this(resolution, maxObjectsPerChunk, radius, null, null);
+    }
+
+    public UniformGrid(int resolution, float radius) {
+        this(resolution, Integer.MAX_VALUE, radius);
+    }
+
+    public int getChunkX(float x) {
+        int i = (int) Math.floor((x - originX) / chunkSize);
+        return Math.max(0, Math.min(resolution - 1, i));
+    }
+
+    public int getChunkY(float y) {
+        int j = (int) Math.floor((y - originY) / chunkSize);
+        return Math.max(0, Math.min(resolution - 1, j));
+    }
+
+    public int getChunkIndex(int i, int j) {
+        return i * resolution + j;
+    }
+
+    public int getChunkIndex(float x, float y) {
+        return getChunkIndex(getChunkX(x), getChunkY(y));
+    }
+
+    public int getChunkIndex(Vector2 pos) {
+        return getChunkIndex(pos.x, pos.y);
+    }
+
+    /**
+     * @return the index of the chunk the object was added to
+     */
+    public int add(T t, float x, float y) {
+        int chunk = getChunkIndex(x, y);
+        insert(t, chunk);
+        return chunk;
+    }
+
+    public int add(T t, Vector2 pos) {
+        return add(t, pos.x, pos.y);
+    }
+
+    public void insert(T t, int chunk) {
+        Object[] objects = chunkObjects[chunk];
+        int count = chunkCounts[chunk];
+        if (objects == null) {
+            objects = new Object[8];
+            chunkObjects[chunk] = objects;
+        } else if (count == objects.length) {
+            objects = Arrays.copyOf(objects, 2 * count);
+            chunkObjects[chunk] = objects;
+        }
+        objects[count] = t;
+        chunkCounts[chunk] = count + 1;
+        size++;
+        if (slotSetter != null)
+            slotSetter.accept(t, count);
+    }
+
+    /**
+     * Inserts the object into every chunk overlapping the given box, for static objects with an extent.
+     */
+    public void addToBox(T t, float minX, float minY, float maxX, float maxY) {
+        int iMax = getChunkX(maxX), jMax = getChunkY(maxY);
+        for (int i = getChunkX(minX); i <= iMax; i++)
+            for (int j = getChunkY(minY); j <= jMax; j++)
+                insert(t, getChunkIndex(i, j));
+    }
+
+    public boolean remove(T t, int chunk) {
+        Object[] objects = chunkObjects[chunk];
+        int count = chunkCounts[chunk];
+        int k = slotGetter != null ? slotGetter.applyAsInt(t) : -1;
+        if (k < 0 || k >= count || objects[k] != t) {
+            for (k = 0; k < count; k++)
+                if (objects[k] == t)
+                    break;
+            if (k == count)
+                return false;
+        }
+
+        int last = count - 1;
+        objects[k] = objects[last];
+        objects[last] = null;
+        chunkCounts[chunk] = last;
+        size--;
+        if (slotSetter != null) {
+            if (k != last)
+                slotSetter.accept(get(chunk, k), k);
+            slotSetter.accept(t, -1);
+        }
+        return true;
+    }
+
+    public void move(T t, int fromChunk, int toChunk) {
+        if (fromChunk == toChunk)
+            return;
+        if (remove(t, fromChunk))
+            insert(t, toChunk);
+    }
+
+    public void clear() {
+        for (int chunk = 0; chunk < chunkObjects.length; chunk++) {
+            if (chunkCounts[chunk] > 0)
+                Arrays.fill(chunkObjects[chunk], 0, chunkCounts[chunk], null);
+            chunkCounts[chunk] = 0;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCount(int chunk) {
+        return chunkCounts[chunk];
+    }
+
+    public int getCount(int i, int j) {
+        return getCount(getChunkIndex(i, j));
+    }
+
+    public int getCount(Vector2 pos) {
+        return getCount(getChunkIndex(pos));
+    }
+
+    public boolean isFull(int chunk) {
+        return chunkCounts[chunk] >= maxObjectsPerChunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int chunk, int k) {
+        return (T) chunkObjects[chunk][k];
+    }
+
+    public void forEachInChunk(int chunk, Consumer<? super T> consumer) {
+        int count = chunkCounts[chunk];
+        for (int k = 0; k < count; k++)
+            consumer.accept(get(chunk, k));
+    }
+
+    public void forEachInBox(float minX, float minY, float maxX, float maxY, Consumer<? super T> consumer) {
+        int iMax = getChunkX(maxX), jMax = getChunkY(maxY);
+        for (int i = getChunkX(minX); i <= iMax; i++)
+            for (int j = getChunkY(minY); j <= jMax; j++)
+                forEachInChunk(getChunkIndex(i, j), consumer);
+    }
+
+    /**
+     * @return the first object in a chunk overlapping the box that satisfies the predicate, or null
+     */
+    public T findInBox(float minX, float minY, float maxX, float maxY, Predicate<? super T> predicate) {
+        int iMax = getChunkX(maxX), jMax = getChunkY(maxY);
+        for (int i = getChunkX(minX); i <= iMax; i++) {
+            for (int j = getChunkY(minY); j <= jMax; j++) {
+                int chunk = getChunkIndex(i, j);
+                int count = chunkCounts[chunk];
+                for (int k = 0; k < count; k++) {
+                    T t = get(chunk, k);
+                    if (predicate.test(t))
+                        return t;
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<T> getChunkContents(int chunk) {
+        final int count = chunkCounts[chunk];
+        return new AbstractList<T>() {
+            @Override
+            public T get(int k) {
+                return UniformGrid.this.get(chunk, k);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    public List<T> getChunkContents(int i, int j) {
+        return getChunkContents(getChunkIndex(i, j));
+    }
+
+    public Collection<Integer> getChunkIndices() {
+        List<Integer> indices = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCounts.length; chunk++)
+            if (chunkCounts[chunk] > 0)
+                indices.add(chunk);
+        return indices;
+    }
+
+    public int getNumChunks() {
+        return chunkCounts.length;
+    }
+
+    public int getChunkCapacity() {
+        return maxObjectsPerChunk;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getChunkSize() {
+        return chunkSize;
+    }
+}
@@ -1,8 +1,8 @@
 package com.protoevo.physics.box2d;
 
+import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
 import com.protoevo.env.Rock;
-import com.protoevo.physics.Collision;
 
 import java.io.Serializable;
 
@@ -11,9 +11,6 @@ public class Box2DCollisionHandler implements ContactListener, Serializable {
 
     @Override
     public void beginContact(Contact contact) {
-        if (contact.getWorldManifold().getPoints().length == 0)
-            return;
-
         Fixture fixtureA = contact.getFixtureA();
         Fixture fixtureB = contact.getFixtureB();
         Body bodyA = fixtureA.getBody();
@@ -21,35 +18,21 @@ public class Box2DCollisionHandler implements ContactListener, Serializable {
         bodyA.setAwake(true);
         bodyB.setAwake(true);
 
-        if (fixtureA.isSensor() && bodyA.getUserData() instanceof Box2DParticle) {
-            Box2DParticle particleA = (Box2DParticle) bodyA.getUserData();
-            particleA.addInteractingObject(bodyB.getUserData());
-        }
-        else if (fixtureB.isSensor() && bodyB.getUserData() instanceof Box2DParticle) {
-            Box2DParticle particleB = (Box2DParticle) bodyB.getUserData();
-            particleB.addInteractingObject(bodyA.getUserData());
-        }
-        else {
-            if (bodyA.getUserData() instanceof Box2DParticle)
-                onContact(contact, (Box2DParticle) bodyA.getUserData(), bodyB);
+        // The manifold's points are owned by Box2D and overwritten by the next contact,
+        // so particles copy the point rather than keep a reference to it.
+        Vector2 point = contact.getWorldManifold().getPoints()[0];
+        if (bodyA.getUserData() instanceof Box2DParticle)
+            onContact((Box2DParticle) bodyA.getUserData(), bodyB.getUserData(), point);
 
-            if (bodyB.getUserData() instanceof Box2DParticle)
-                onContact(contact, (Box2DParticle) bodyB.getUserData(), bodyA);
-        }
+        if (bodyB.getUserData() instanceof Box2DParticle)
+            onContact((Box2DParticle) bodyB.getUserData(), bodyA.getUserData(), point);
     }
 
-    private void onContact(Contact contact, Box2DParticle particle, Body body) {
-        Collision collision = new Collision(
-                particle,
-                body.getUserData(),
-                contact.getWorldManifold().getPoints()[0]);
-        if (body.getUserData() instanceof Box2DParticle) {
-            Box2DParticle other = (Box2DParticle) body.getUserData();
-            particle.onCollision(collision, other);
-        } else if (body.getUserData() instanceof Rock) {
-            Rock rock = (Rock) body.getUserData();
-            particle.onCollision(collision, rock);
-        }
+    private void onContact(Box2DParticle particle, Object other, Vector2 point) {
+        if (other instanceof Box2DParticle)
+            particle.onCollision((Box2DParticle) other, point);
+        else if (other instanceof Rock)
+            particle.onCollision((Rock) other, point);
     }
 
     @Override
@@ -63,17 +46,7 @@ public class Box2DCollisionHandler implements ContactListener, Serializable {
             ((Box2DParticle) bodyA.getUserData()).endContact(bodyB.getUserData());
 
         if (bodyB.getUserData() instanceof Box2DParticle)
-            ((Box2DParticle) bodyB.getUserData()).endContact(bodyB.getUserData());
-
-
-        if (fixtureA.isSensor() && bodyA.getUserData() instanceof Box2DParticle) {
-            Box2DParticle particleA = (Box2DParticle) bodyA.getUserData();
-            particleA.removeInteractingObject(bodyB.getUserData());
-        }
-        else if (fixtureB.isSensor() && bodyB.getUserData() instanceof Box2DParticle) {
-            Box2DParticle particleB = (Box2DParticle) bodyB.getUserData();
-            particleB.removeInteractingObject(bodyA.getUserData());
-        }
+            ((Box2DParticle) bodyB.getUserData()).endContact(bodyA.getUserData());
     }
 
     @Override
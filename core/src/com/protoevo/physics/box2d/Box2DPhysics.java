@@ -16,6 +16,7 @@ public class Box2DPhysics extends Physics {
 
     private transient World world;
     private final JointsManager jointsManager;
+    private transient RangedInteractionGrid rangedInteractions;
 
     public Box2DPhysics() {
         createWorld();
@@ -50,6 +51,8 @@ public class Box2DPhysics extends Physics {
     @Override
     public void registerStaticBodies(Environment environment) {
         createRockFixtures(environment);
+        rangedInteractions = new RangedInteractionGrid(
+                environment.getRocks(), 1.5f * Environment.settings.worldgen.radius.get());
     }
 
     @Override
@@ -72,6 +75,8 @@ public class Box2DPhysics extends Physics {
                 delta,
                 Environment.settings.misc.physicsVelocityIterations.get(),
                 Environment.settings.misc.physicsPositionIterations.get());
+        if (rangedInteractions != null)
+            rangedInteractions.update(getParticles());
     }
 
     @Override
@@ -104,7 +109,7 @@ public class Box2DPhysics extends Physics {
                 sleepCount++;
         }
 
-        debugStats.putPercentage("Sleeping",  100f * sleepCount / totalCells);
+        debugStats.putPercentage("Sleeping", totalCells == 0 ? 0 : 100f * sleepCount / totalCells);
 
         return debugStats;
     }
@@ -0,0 +1,130 @@
+package com.protoevo.physics.box2d;
+
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Rock;
+import com.protoevo.physics.BinGrid;
+import com.protoevo.physics.Particle;
+import com.protoevo.physics.UniformGrid;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the objects within the interaction range of particles that can interact at range.
+ * This replaces giving every such particle a large Box2D sensor fixture, which added a
+ * broadphase pair for everything within range and left Box2D to handle far more than real contacts.
+ * <br>
+ * Each step the particles are binned into a uniform grid, then every ranged particle
+ * queries the bins and the static rock index around it in parallel.
+ */
+class RangedInteractionGrid {
+
+    private final UniformGrid<Rock> rockIndex;
+
+    private Box2DParticle[] particles = new Box2DParticle[0];
+    private float[] x = new float[0], y = new float[0], radii = new float[0];
+    private int[] ranged = new int[0];
+    private int nParticles, nRanged;
+
+    private final float gridRadius;
+    private final BinGrid grid = new BinGrid();
+
+    RangedInteractionGrid(Collection<Rock> rocks, float gridRadius) {
+        int resolution = Environment.settings.misc.spatialHashResolution.get();
+        rockIndex = new UniformGrid<>(resolution, gridRadius);
+        for (Rock rock : rocks) {
+            Vector2[] bounds = rock.getBoundingBox();
+            rockIndex.addToBox(rock, bounds[0].x, bounds[0].y, bounds[1].x, bounds[1].y);
+        }
+        this.gridRadius = gridRadius;
+    }
+
+    void update(Collection<Particle> allParticles) {
+        collect(allParticles);
+        if (nRanged == 0)
+            return;
+        buildGrid();
+        IntStream.range(0, nRanged).parallel().forEach(k -> query(ranged[k]));
+    }
+
+    private void collect(Collection<Particle> allParticles) {
+        int capacity = allParticles.size();
+        if (particles.length < capacity) {
+            capacity = Math.max(capacity, 2 * particles.length);
+            particles = new Box2DParticle[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            radii = new float[capacity];
+            ranged = new int[capacity];
+        }
+
+        nParticles = 0;
+        nRanged = 0;
+        for (Particle particle : allParticles) {
+            if (particle.isDead() || nParticles == particles.length)
+                continue;
+            Box2DParticle box2DParticle = (Box2DParticle) particle;
+            Vector2 pos = box2DParticle.getPos();
+            particles[nParticles] = box2DParticle;
+            x[nParticles] = pos.x;
+            y[nParticles] = pos.y;
+            radii[nParticles] = box2DParticle.getRadius();
+            if (box2DParticle.canInteractAtRange())
+                ranged[nRanged++] = nParticles;
+            nParticles++;
+        }
+        Arrays.fill(particles, nParticles, particles.length, null);
+    }
+
+    private void buildGrid() {
+        float binSize = 2 * Environment.settings.maxParticleRadius.get();
+        int resolution = Math.min(1024, (int) Math.ceil(2 * gridRadius / binSize));
+        grid.reset(-gridRadius, -gridRadius, binSize, resolution);
+        grid.binPoints(x, y, nParticles);
+    }
+
+    private void query(int i) {
+        Box2DParticle particle = particles[i];
+        List<Object> sensed = particle.getSensingScratch();
+        float px = x[i], py = y[i];
+        float sensorRadius = particle.getSensorRadius();
+
+        float searchRadius = sensorRadius + Environment.settings.maxParticleRadius.get();
+        int i0 = grid.getBinX(px - searchRadius), i1 = grid.getBinX(px + searchRadius);
+        int j0 = grid.getBinY(py - searchRadius), j1 = grid.getBinY(py + searchRadius);
+        for (int bj = j0; bj <= j1; bj++) {
+            for (int bi = i0; bi <= i1; bi++) {
+                int bin = grid.getBin(bi, bj);
+                for (int k = grid.getBinStart(bin); k < grid.getBinEnd(bin); k++) {
+                    int j = grid.getItem(k);
+                    if (j == i)
+                        continue;
+                    float dx = x[j] - px, dy = y[j] - py;
+                    float range = sensorRadius + radii[j];
+                    if (dx * dx + dy * dy < range * range)
+                        sensed.add(particles[j]);
+                }
+            }
+        }
+
+        Vector2 pos = particle.getPos();
+        int ri0 = rockIndex.getChunkX(px - sensorRadius), ri1 = rockIndex.getChunkX(px + sensorRadius);
+        int rj0 = rockIndex.getChunkY(py - sensorRadius), rj1 = rockIndex.getChunkY(py + sensorRadius);
+        for (int ci = ri0; ci <= ri1; ci++) {
+            for (int cj = rj0; cj <= rj1; cj++) {
+                int chunk = rockIndex.getChunkIndex(ci, cj);
+                for (int k = 0; k < rockIndex.getCount(chunk); k++) {
+                    Rock rock = rockIndex.get(chunk, k);
+                    // rocks spanning several chunks are only added once
+                    if (!sensed.contains(rock) && rock.overlapsCircle(pos, sensorRadius))
+                        sensed.add(rock);
+                }
+            }
+        }
+
+        particle.updateInteractions(sensed);
+    }
+}
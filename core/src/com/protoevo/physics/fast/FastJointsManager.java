@@ -0,0 +1,56 @@
+package com.protoevo.physics.fast;
+
+import com.protoevo.physics.Joining;
+import com.protoevo.physics.JointsManager;
+import com.protoevo.physics.Physics;
+
+/**
+ * Joints for {@link FastPhysics}. There is no joint object to create or destroy, a joining
+ * is enforced by the solver for as long as it is registered here.
+ */
+public class FastJointsManager extends JointsManager {
+    public static long serialVersionUID = 1L;
+
+    public FastJointsManager() {}
+
+    public FastJointsManager(FastPhysics physics) {
+        super(physics);
+    }
+
+    public void rebuild(Physics physics) {
+        this.physics = physics;
+        joinings.entrySet().removeIf(
+                entry -> !entry.getValue().getParticleA().isPresent()
+                        || !entry.getValue().getParticleB().isPresent()
+        );
+        jointsToAdd.clear();
+    }
+
+    public void flushJoints() {
+        for (Joining joining : joinings.values())
+            if (joining.anyDied())
+                requestJointRemoval(joining);
+
+        for (long joiningID : jointRemovalRequests) {
+            Joining joining = joinings.remove(joiningID);
+            if (joining != null)
+                deregisterJoining(joining);
+        }
+        jointRemovalRequests.clear();
+
+        for (Joining joining : jointsToAdd) {
+            if (joining.anyDied())
+                deregisterJoining(joining);
+            else
+                joinings.put(joining.id, joining);
+        }
+        jointsToAdd.clear();
+    }
+
+    /**
+     * @return the joining with the given id if it has been flushed, otherwise null
+     */
+    Joining getActiveJoining(long id) {
+        return joinings.get(id);
+    }
+}
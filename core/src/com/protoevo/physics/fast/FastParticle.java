@@ -0,0 +1,158 @@
+package com.protoevo.physics.fast;
+
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Rock;
+import com.protoevo.physics.Joining;
+import com.protoevo.physics.Particle;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Circular particle simulated by {@link FastPhysics}.
+ * <br>
+ * The particle's state lives here between steps. During a step {@link FastPhysics} copies it
+ * into flat arrays, and uses the transient lists below to record which particles, rocks and
+ * joints each particle has to be solved against. Every list is only written by the worker
+ * handling its own particle, so particles can be processed in parallel.
+ */
+public class FastParticle extends Particle implements Serializable {
+
+    public static long serialVersionUID = 1L;
+
+    private float angularVel;
+    private float stepTorque = 0, linearDamping;
+
+    // Solver state, rebuilt every step
+    transient int index = -1;
+    transient int[] neighbours = new int[8];
+    transient int nNeighbours;
+    transient Rock[] rocks = new Rock[2];
+    transient int nRocks;
+    transient int[] jointOthers = new int[2];
+    transient Joining[] joints = new Joining[2];
+    transient int nJoints;
+    transient float[] solverScratch = new float[2];
+    // Objects touched at the end of the previous step
+    private transient List<Object> touching = new ArrayList<>(), nowTouching = new ArrayList<>();
+
+    public FastParticle(FastPhysics physics) {
+        super(physics);
+        linearDamping = Environment.settings.env.fluidDragDampening.get();
+    }
+
+    public FastParticle() {
+        super(null);
+    }
+
+    @Override
+    public void rebuildTransientFields() {
+        super.rebuildTransientFields();
+        index = -1;
+        neighbours = new int[8];
+        rocks = new Rock[2];
+        jointOthers = new int[2];
+        joints = new Joining[2];
+        solverScratch = new float[2];
+        touching = new ArrayList<>();
+        nowTouching = new ArrayList<>();
+    }
+
+    /**
+     * Dynamics mass used by the solver, matching the unit density of the Box2D fixtures.
+     */
+    float getDynamicsMass() {
+        return (float) (Math.PI * radius * radius);
+    }
+
+    float getLinearDamping() {
+        return linearDamping;
+    }
+
+    float getStepTorque() {
+        return stepTorque;
+    }
+
+    float getAngularVel() {
+        return angularVel;
+    }
+
+    /**
+     * Sets the state at the end of a step.
+     */
+    void setSolvedState(float x, float y, float vx, float vy, float angle, float angularVel) {
+        pos.set(x, y);
+        vel.set(vx, vy);
+        this.angle = angle;
+        this.angularVel = angularVel;
+    }
+
+    /**
+     * Begins and ends contacts and interactions from the objects found to be touching
+     * and within sensor range by the last step.
+     */
+    void updateContacts(List<Object> touchingObjects, List<Object> sensedObjects) {
+        for (Object object : touchingObjects)
+            if (!touching.contains(object))
+                beginContact(object);
+        for (Object object : touching)
+            if (!touchingObjects.contains(object))
+                endContact(object);
+
+        List<Object> swap = touching;
+        touching = touchingObjects;
+        nowTouching = swap;
+
+        updateInteractions(sensedObjects);
+    }
+
+    List<Object> getTouchingScratch() {
+        nowTouching.clear();
+        return nowTouching;
+    }
+
+    private void beginContact(Object object) {
+        if (object instanceof FastParticle) {
+            FastParticle other = (FastParticle) object;
+            Vector2 point = tmp.set(other.getPos()).sub(getPos())
+                    .setLength(getRadius() - 0.5f * (getRadius() + other.getRadius() - other.getPos().dst(getPos())))
+                    .add(getPos());
+            onCollision(other, point);
+        } else if (object instanceof Rock) {
+            Rock rock = (Rock) object;
+            onCollision(rock, FastPhysics.closestPointOnRock(rock, getPos(), tmp));
+        }
+    }
+
+    public void physicsUpdate() {
+        float invMass = 1f / getDynamicsMass();
+        vel.mulAdd(impulseToApply, invMass);
+        stepTorque = torqueToApply;
+        linearDamping = getDampeningFactor() * Environment.settings.env.fluidDragDampening.get();
+
+        if (getSpeed() < getRadius() / 50f)
+            vel.set(0, 0);
+
+        torqueToApply = 0;
+        impulseToApply.set(0, 0);
+
+        contacts.removeIf(this::removeCollision);
+    }
+
+    @Override
+    public void setVel(float vx, float vy) {
+        vel.set(vx, vy);
+    }
+
+    @Override
+    public void setVel(Vector2 vel) {
+        this.vel.set(vel);
+    }
+
+    @Override
+    public void setAngularVel(float angularVel) {
+        this.angularVel = angularVel;
+    }
+}
@@ -0,0 +1,494 @@
+package com.protoevo.physics.fast;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.core.Statistics;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Rock;
+import com.protoevo.physics.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Pure Java physics for worlds made of circles and static triangular rocks, stepped on
+ * multiple threads.
+ * <br>
+ * Each step integrates the velocities of all particles, predicts their new positions, and
+ * then projects those positions out of any overlaps and back within their joint lengths
+ * (position based dynamics). The broadphase bins particles into a uniform grid, after which
+ * every particle gathers the particles, rocks and joints it needs to be solved against.
+ * Constraints are solved with Jacobi iterations: every particle computes its own correction
+ * from the previous iteration's positions, so all particles are solved in parallel without
+ * sharing any writes. Velocities are taken from the distance moved over the step.
+ * <br>
+ * Contacts and interactions are tracked per particle across steps, giving the same
+ * begin and end contact behaviour as {@link com.protoevo.physics.box2d.Box2DPhysics}.
+ */
+public class FastPhysics extends Physics {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SOLVER_ITERATIONS_PER_POSITION_ITERATION = 4;
+    // Overlap left between resting particles, so touching contacts are stable between steps
+    static final float LINEAR_SLOP = 0.001f;
+    // Extra distance within which constraints are gathered, as particles move while solving
+    private static final float CONSTRAINT_MARGIN = 0.01f;
+    private static final float RELAXATION = 1.5f;
+    private static final float ANGULAR_DAMPING = 5f;
+
+    private final FastJointsManager jointsManager;
+    private transient List<Rock> rocks;
+    private transient UniformGrid<Rock> rockIndex;
+
+    // Solver state, indexed by FastParticle.index
+    private transient FastParticle[] bodies;
+    private transient int nBodies;
+    private transient float[] x, y, angle, nextX, nextY, nextAngle, invMass, invInertia, radii;
+    private transient float stepDelta;
+    private transient int iterations;
+
+    // Broadphase grid of the predicted particle positions
+    private final transient BinGrid grid = new BinGrid();
+
+    public FastPhysics() {
+        jointsManager = new FastJointsManager(this);
+    }
+
+    @Override
+    public void registerStaticBodies(Environment environment) {
+        rocks = environment.getRocks();
+        int resolution = Environment.settings.misc.spatialHashResolution.get();
+        rockIndex = new UniformGrid<>(resolution, getGridRadius());
+        for (Rock rock : rocks) {
+            Vector2[] bounds = rock.getBoundingBox();
+            rockIndex.addToBox(rock, bounds[0].x, bounds[0].y, bounds[1].x, bounds[1].y);
+        }
+    }
+
+    @Override
+    public void rebuildTransientFields(Environment environment) {
+        registerStaticBodies(environment);
+        for (Particle particle : getParticles())
+            particle.rebuildTransientFields();
+        super.rebuildTransientFields(environment);
+    }
+
+    @Override
+    public void dispose() {}
+
+    private float getGridRadius() {
+        return 1.5f * Environment.settings.worldgen.radius.get();
+    }
+
+    @Override
+    protected void stepPhysics(float delta) {
+        if (delta <= 0)
+            return;
+
+        stepDelta = delta;
+        iterations = SOLVER_ITERATIONS_PER_POSITION_ITERATION
+                * Math.max(1, Environment.settings.misc.physicsPositionIterations.get());
+
+        collectBodies();
+        IntStream.range(0, nBodies).parallel().forEach(this::integrate);
+        buildGrid();
+        IntStream.range(0, nBodies).parallel().forEach(this::gatherConstraints);
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            IntStream.range(0, nBodies).parallel().forEach(this::solve);
+            float[] swap = x; x = nextX; nextX = swap;
+            swap = y; y = nextY; nextY = swap;
+            swap = angle; angle = nextAngle; nextAngle = swap;
+        }
+        IntStream.range(0, nBodies).parallel().forEach(this::finish);
+        IntStream.range(0, nBodies).parallel().forEach(this::updateContacts);
+    }
+
+    private void collectBodies() {
+        int capacity = getParticles().size();
+        if (bodies == null || bodies.length < capacity) {
+            capacity = Math.max(capacity, 2 * (bodies == null ? 0 : bodies.length));
+            bodies = new FastParticle[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            angle = new float[capacity];
+            nextX = new float[capacity];
+            nextY = new float[capacity];
+            nextAngle = new float[capacity];
+            invMass = new float[capacity];
+            invInertia = new float[capacity];
+            radii = new float[capacity];
+        }
+
+        nBodies = 0;
+        for (Particle particle : getParticles()) {
+            FastParticle body = (FastParticle) particle;
+            if (body.isDead() || nBodies == bodies.length) {
+                body.index = -1;
+                continue;
+            }
+            body.index = nBodies;
+            bodies[nBodies++] = body;
+        }
+        Arrays.fill(bodies, nBodies, bodies.length, null);
+    }
+
+    private void integrate(int i) {
+        FastParticle body = bodies[i];
+        float h = stepDelta;
+        float mass = body.getDynamicsMass();
+        float r = body.getRadius();
+        invMass[i] = 1f / mass;
+        invInertia[i] = 1f / (0.5f * mass * r * r);
+        radii[i] = r;
+
+        Vector2 vel = body.getVel(), force = body.getForce(), pos = body.getPos();
+        float vx = (vel.x + h * force.x * invMass[i]) / (1f + h * body.getLinearDamping());
+        float vy = (vel.y + h * force.y * invMass[i]) / (1f + h * body.getLinearDamping());
+        float w = (body.getAngularVel() + h * body.getStepTorque() * invInertia[i]) / (1f + h * ANGULAR_DAMPING);
+
+        x[i] = pos.x + h * vx;
+        y[i] = pos.y + h * vy;
+        angle[i] = body.getAngle() + h * w;
+    }
+
+    private void buildGrid() {
+        float gridRadius = getGridRadius();
+        float binSize = 2 * Environment.settings.maxParticleRadius.get() + CONSTRAINT_MARGIN;
+        int resolution = Math.min(1024, (int) Math.ceil(2 * gridRadius / binSize));
+        grid.reset(-gridRadius, -gridRadius, binSize, resolution);
+        grid.binPoints(x, y, nBodies);
+    }
+
+    /**
+     * Collects the particles, rocks and joints that particle i has to be solved against,
+     * and that could come into contact or sensor range with it during the step.
+     */
+    private void gatherConstraints(int i) {
+        FastParticle body = bodies[i];
+        float px = x[i], py = y[i], r = radii[i];
+        float maxRadius = Environment.settings.maxParticleRadius.get();
+        float reach = Math.max(r, body.getSensorRadius()) + CONSTRAINT_MARGIN;
+
+        body.nNeighbours = 0;
+        float searchRadius = reach + maxRadius;
+        int i0 = grid.getBinX(px - searchRadius), i1 = grid.getBinX(px + searchRadius);
+        int j0 = grid.getBinY(py - searchRadius), j1 = grid.getBinY(py + searchRadius);
+        for (int bj = j0; bj <= j1; bj++) {
+            for (int bi = i0; bi <= i1; bi++) {
+                int bin = grid.getBin(bi, bj);
+                for (int k = grid.getBinStart(bin); k < grid.getBinEnd(bin); k++) {
+                    int j = grid.getItem(k);
+                    if (j == i)
+                        continue;
+                    float dx = x[j] - px, dy = y[j] - py;
+                    float range = reach + radii[j];
+                    if (dx * dx + dy * dy < range * range)
+                        addNeighbour(body, j);
+                }
+            }
+        }
+
+        body.nRocks = 0;
+        if (rockIndex != null) {
+            int ri0 = rockIndex.getChunkX(px - reach), ri1 = rockIndex.getChunkX(px + reach);
+            int rj0 = rockIndex.getChunkY(py - reach), rj1 = rockIndex.getChunkY(py + reach);
+            for (int ci = ri0; ci <= ri1; ci++) {
+                for (int cj = rj0; cj <= rj1; cj++) {
+                    int chunk = rockIndex.getChunkIndex(ci, cj);
+                    for (int k = 0; k < rockIndex.getCount(chunk); k++)
+                        addRock(body, rockIndex.get(chunk, k), px, py, reach);
+                }
+            }
+        }
+
+        body.nJoints = 0;
+        for (Map.Entry<Long, Long> entry : body.getJoiningIds().entrySet()) {
+            Joining joining = jointsManager.getActiveJoining(entry.getValue());
+            if (joining == null)
+                continue;
+            Particle other = getParticle(entry.getKey()).orElse(null);
+            if (!(other instanceof FastParticle) || ((FastParticle) other).index < 0)
+                continue;
+            addJoint(body, ((FastParticle) other).index, joining);
+        }
+    }
+
+    private static void addNeighbour(FastParticle body, int j) {
+        if (body.nNeighbours == body.neighbours.length)
+            body.neighbours = Arrays.copyOf(body.neighbours, 2 * body.nNeighbours);
+        body.neighbours[body.nNeighbours++] = j;
+    }
+
+    private static void addRock(FastParticle body, Rock rock, float px, float py, float reach) {
+        Vector2[] bounds = rock.getBoundingBox();
+        if (bounds[1].x < px - reach || bounds[0].x > px + reach
+                || bounds[1].y < py - reach || bounds[0].y > py + reach)
+            return;
+        // rocks are indexed in every chunk they overlap
+        for (int k = 0; k < body.nRocks; k++)
+            if (body.rocks[k] == rock)
+                return;
+        if (body.nRocks == body.rocks.length)
+            body.rocks = Arrays.copyOf(body.rocks, 2 * body.nRocks);
+        body.rocks[body.nRocks++] = rock;
+    }
+
+    private static void addJoint(FastParticle body, int other, Joining joining) {
+        if (body.nJoints == body.joints.length) {
+            body.joints = Arrays.copyOf(body.joints, 2 * body.nJoints);
+            body.jointOthers = Arrays.copyOf(body.jointOthers, 2 * body.nJoints);
+        }
+        body.joints[body.nJoints] = joining;
+        body.jointOthers[body.nJoints] = other;
+        body.nJoints++;
+    }
+
+    /**
+     * One Jacobi iteration for particle i: reads the current positions of every particle
+     * and writes only particle i's next position.
+     */
+    private void solve(int i) {
+        FastParticle body = bodies[i];
+        float px = x[i], py = y[i], pa = angle[i], r = radii[i];
+        float dx = 0, dy = 0, da = 0;
+        int count = 0;
+
+        for (int k = 0; k < body.nNeighbours; k++) {
+            int j = body.neighbours[k];
+            float ex = px - x[j], ey = py - y[j];
+            float target = r + radii[j] - LINEAR_SLOP;
+            float d2 = ex * ex + ey * ey;
+            if (d2 >= target * target)
+                continue;
+            float d = (float) Math.sqrt(d2);
+            float nx, ny;
+            if (d > 1e-6f) {
+                nx = ex / d;
+                ny = ey / d;
+            } else {
+                // coincident centres, separate along x in a consistent direction
+                nx = i < j ? -1 : 1;
+                ny = 0;
+            }
+            float share = invMass[i] / (invMass[i] + invMass[j]);
+            dx += nx * (target - d) * share;
+            dy += ny * (target - d) * share;
+            count++;
+        }
+
+        float[] contact = body.solverScratch;
+        for (int k = 0; k < body.nRocks; k++) {
+            float depth = rockPenetration(body.rocks[k], px, py, r, contact) - LINEAR_SLOP;
+            if (depth <= 0)
+                continue;
+            dx += contact[0] * depth;
+            dy += contact[1] * depth;
+            count++;
+        }
+
+        for (int k = 0; k < body.nJoints; k++) {
+            Joining joining = body.joints[k];
+            int j = body.jointOthers[k];
+            boolean isA = joining.particleAId == body.getId();
+            boolean anchoredI = isA ? joining.anchoredA : joining.anchoredB;
+            boolean anchoredJ = isA ? joining.anchoredB : joining.anchoredA;
+            float anchorAngleI = isA ? joining.anchorAngleA : joining.anchorAngleB;
+            float anchorAngleJ = isA ? joining.anchorAngleB : joining.anchorAngleA;
+
+            float oix = anchoredI ? r * MathUtils.cos(anchorAngleI + pa) : 0;
+            float oiy = anchoredI ? r * MathUtils.sin(anchorAngleI + pa) : 0;
+            float ojx = anchoredJ ? radii[j] * MathUtils.cos(anchorAngleJ + angle[j]) : 0;
+            float ojy = anchoredJ ? radii[j] * MathUtils.sin(anchorAngleJ + angle[j]) : 0;
+            float ex = (px + oix) - (x[j] + ojx), ey = (py + oiy) - (y[j] + ojy);
+            float d = (float) Math.sqrt(ex * ex + ey * ey);
+            if (d < 1e-6f)
+                continue;
+
+            float length = isA ? idealJointLength(joining, r, radii[j]) : idealJointLength(joining, radii[j], r);
+            float c = d - length;
+            Joining.MetaData metaData = joining.getMetaData();
+            if (metaData.getType() == Joining.Type.ROPE && c <= 0)
+                continue;
+
+            float nx = ex / d, ny = ey / d;
+            float crossI = oix * ny - oiy * nx;
+            float crossJ = ojx * ny - ojy * nx;
+            float w = invMass[i] + crossI * crossI * invInertia[i]
+                    + invMass[j] + crossJ * crossJ * invInertia[j];
+            float lambda = -c * getJointStiffness(metaData) / w;
+            dx += nx * lambda * invMass[i];
+            dy += ny * lambda * invMass[i];
+            da += crossI * lambda * invInertia[i];
+            count++;
+        }
+
+        float scale = count > 0 ? Math.min(1f, RELAXATION / count) : 0f;
+        nextX[i] = px + scale * dx;
+        nextY[i] = py + scale * dy;
+        nextAngle[i] = pa + scale * da;
+    }
+
+    private static float idealJointLength(Joining joining, float radiusA, float radiusB) {
+        // as in Joining.getIdealLength, without looking the particles up
+        float len = (radiusA + radiusB) * .2f;
+        if (!joining.anchoredA)
+            len += radiusA;
+        if (!joining.anchoredB)
+            len += radiusB;
+        return len;
+    }
+
+    /**
+     * @return the fraction of a joint's error to correct per iteration, so that soft
+     * distance joints close the gap at roughly the rate of a spring of their frequency
+     */
+    private float getJointStiffness(Joining.MetaData metaData) {
+        if (!(metaData instanceof Joining.DistanceMetaData))
+            return 1f;
+        float frequencyHz = ((Joining.DistanceMetaData) metaData).frequencyHz;
+        if (frequencyHz <= 0)
+            return 1f;
+        float omegaH = MathUtils.PI2 * frequencyHz * stepDelta;
+        float stepStiffness = Math.min(1f, omegaH * omegaH);
+        return 1f - (float) Math.pow(1f - stepStiffness, 1f / iterations);
+    }
+
+    private void finish(int i) {
+        FastParticle body = bodies[i];
+        Vector2 pos = body.getPos();
+        float h = stepDelta;
+        body.setSolvedState(x[i], y[i],
+                (x[i] - pos.x) / h, (y[i] - pos.y) / h,
+                angle[i], (angle[i] - body.getAngle()) / h);
+    }
+
+    private void updateContacts(int i) {
+        FastParticle body = bodies[i];
+        List<Object> touching = body.getTouchingScratch();
+        List<Object> sensing = body.getSensingScratch();
+        float px = x[i], py = y[i], r = radii[i];
+        float sensorRadius = body.getSensorRadius();
+
+        for (int k = 0; k < body.nNeighbours; k++) {
+            int j = body.neighbours[k];
+            float dx = x[j] - px, dy = y[j] - py;
+            float d2 = dx * dx + dy * dy;
+            float touchRange = r + radii[j];
+            float senseRange = sensorRadius + radii[j];
+            if (d2 < touchRange * touchRange)
+                touching.add(bodies[j]);
+            if (sensorRadius > 0 && d2 < senseRange * senseRange)
+                sensing.add(bodies[j]);
+        }
+
+        float[] contact = body.solverScratch;
+        for (int k = 0; k < body.nRocks; k++) {
+            Rock rock = body.rocks[k];
+            if (rockPenetration(rock, px, py, r, contact) > 0)
+                touching.add(rock);
+            if (sensorRadius > 0 && rockPenetration(rock, px, py, sensorRadius, contact) > 0)
+                sensing.add(rock);
+        }
+
+        body.updateContacts(touching, sensing);
+    }
+
+    /**
+     * Computes how far the circle at (px, py) with radius r penetrates the rock.
+     *
+     * @param normalOut receives the direction to push the circle out of the rock
+     * @return the penetration depth, which is not positive if they do not overlap
+     */
+    static float rockPenetration(Rock rock, float px, float py, float r, float[] normalOut) {
+        Vector2[][] edges = rock.getEdges();
+        Vector2[] normals = rock.getNormals();
+
+        boolean inside = true;
+        float maxSignedDist = -Float.MAX_VALUE;
+        int nearestEdge = 0;
+        float closestD2 = Float.MAX_VALUE, closestX = px, closestY = py;
+        for (int e = 0; e < edges.length; e++) {
+            Vector2 a = edges[e][0], b = edges[e][1];
+            float signedDist = (px - a.x) * normals[e].x + (py - a.y) * normals[e].y;
+            if (signedDist > 0)
+                inside = false;
+            if (signedDist > maxSignedDist) {
+                maxSignedDist = signedDist;
+                nearestEdge = e;
+            }
+
+            float ex = b.x - a.x, ey = b.y - a.y;
+            float len2 = ex * ex + ey * ey;
+            float t = len2 > 0 ? MathUtils.clamp(((px - a.x) * ex + (py - a.y) * ey) / len2, 0f, 1f) : 0f;
+            float qx = a.x + t * ex, qy = a.y + t * ey;
+            float d2 = (px - qx) * (px - qx) + (py - qy) * (py - qy);
+            if (d2 < closestD2) {
+                closestD2 = d2;
+                closestX = qx;
+                closestY = qy;
+            }
+        }
+
+        if (inside) {
+            normalOut[0] = normals[nearestEdge].x;
+            normalOut[1] = normals[nearestEdge].y;
+            return r - maxSignedDist;
+        }
+
+        float d = (float) Math.sqrt(closestD2);
+        if (d >= r || d < 1e-6f)
+            return 0f;
+        normalOut[0] = (px - closestX) / d;
+        normalOut[1] = (py - closestY) / d;
+        return r - d;
+    }
+
+    static Vector2 closestPointOnRock(Rock rock, Vector2 p, Vector2 out) {
+        float closestD2 = Float.MAX_VALUE;
+        for (Vector2[] edge : rock.getEdges()) {
+            Vector2 a = edge[0], b = edge[1];
+            float ex = b.x - a.x, ey = b.y - a.y;
+            float len2 = ex * ex + ey * ey;
+            float t = len2 > 0 ? MathUtils.clamp(((p.x - a.x) * ex + (p.y - a.y) * ey) / len2, 0f, 1f) : 0f;
+            float qx = a.x + t * ex, qy = a.y + t * ey;
+            float d2 = (p.x - qx) * (p.x - qx) + (p.y - qy) * (p.y - qy);
+            if (d2 < closestD2) {
+                closestD2 = d2;
+                out.set(qx, qy);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public JointsManager getJointsManager() {
+        return jointsManager;
+    }
+
+    @Override
+    public Particle newParticle() {
+        return new FastParticle(this);
+    }
+
+    @Override
+    public Statistics getDebugStats() {
+        Statistics debugStats = super.getDebugStats();
+
+        int contactCount = 0, sleepCount = 0;
+        for (Particle particle : getParticles()) {
+            contactCount += particle.getContacts().size();
+            if (particle.getVel().isZero())
+                sleepCount++;
+        }
+        int totalCells = getParticles().size();
+
+        debugStats.putCount("Bodies", totalCells);
+        debugStats.putCount("Contacts", contactCount);
+        debugStats.putCount("Joints", jointsManager.getJoinings().size());
+        debugStats.putPercentage("Sleeping", totalCells == 0 ? 0 : 100f * sleepCount / totalCells);
+
+        return debugStats;
+    }
+}
@@ -35,6 +35,10 @@ public class MiscSettings extends Settings {
             "Physics Velocity Iterations",
             "Number of iterations to run the physics engine's velocity solver.",
             1);
+    public final Parameter<Boolean> useMultithreadedPhysics = new Parameter<>(
+            "Use Multithreaded Physics",
+            "Whether to simulate physics with the pure Java engine, which steps particles on multiple threads, instead of Box2D. Only takes effect for new environments.",
+            false);
     public final Parameter<Integer> maxPlants = new Parameter<>(
             "Max Plants",
             "The maximum number of plants that can exist in the simulation.",
@@ -67,19 +71,31 @@ public class MiscSettings extends Settings {
             "Use OpenGL Compute Shader",
             "Whether or not to use OpenGL compute shaders for accelerating calculations on the GPU.",
             true);
-    public final Parameter<Integer> chemicalCPUIterations = new Parameter<>(
-            "CPU Chemical Diffusion Iterations",
-            "Number of chemical diffusion iterations to perform when running on the CPU.",
-            100000);
+    public final Parameter<Boolean> useVectorDiffusion = new Parameter<>(
+            "Use SIMD Diffusion",
+            "Whether to use the Vector API for chemical diffusion when running on the CPU. Falls back to scalar code when the jdk.incubator.vector module is not available.",
+            true);
     public final Parameter<Integer> spatialHashResolution = new Parameter<>(
             "Spatial Hash Resolution",
             "The resolution of the spatial hash used for local population caps.",
             20);
+    public final Parameter<Integer> simulationWorkerThreads = new Parameter<>(
+            "Simulation Worker Threads",
+            "Number of worker threads used to run the phases of each simulation tick (0 uses all available processors).",
+            0);
+    public final Parameter<Boolean> batchGeneExpression = new Parameter<>(
+            "Batch Gene Expression",
+            "Whether to evaluate the gene regulatory networks of cells that share a network topology together in one vectorised pass.",
+            false);
     public final Parameter<Float> checkCellJoiningsInterval = new Parameter<>(
             "Check Cell Joinings Interval",
             "The amount of time between checking for cell joinings.",
             0.1f
     );
+    public final Parameter<Integer> quiescentCellUpdateInterval = new Parameter<>(
+            "Quiescent Cell Update Interval",
+            "Number of ticks between updates of resting plant and meat cells, which are updated with the accumulated time (1 updates them every tick).",
+            4);
 
 
     public MiscSettings() {
@@ -94,6 +94,10 @@ public class WorldGenerationSettings extends Settings {
             "Bake Rock Shadows",
             "Whether or not shadows are baked from rocks",
             true);
+    public final Parameter<Boolean> cacheRockShadows = new Parameter<>(
+            "Cache Rock Shadows",
+            "Whether baked rock shadows are saved to disk and reused when the same world is generated again",
+            true);
     public final Parameter<Integer> lightMapResolution = new Parameter<>(
             "Light Map Resolution",
             "How many cells wide the light map is.",
@@ -32,10 +32,6 @@ public class ChemicalsRenderer implements Renderer {
 
         chemicalTexture = new Texture(chemicalPixmap);
 
-        chemicalSolution.setUpdateChemicalCallback((x, y, c) -> {
-            chemicalPixmap.drawPixel(x, y, c.getRGBA8888());
-        });
-
         batch = new SpriteBatch();
         shader = new ShaderProgram(
                 Gdx.files.internal("shaders/chemical/vertex.glsl"),
@@ -51,7 +47,8 @@ public class ChemicalsRenderer implements Renderer {
         if (chemicalSolution == null || chemicalTexture == null)
             return;
 
-        chemicalTexture.draw(chemicalPixmap, 0, 0);
+        if (chemicalSolution.copyDirtyTiles(chemicalPixmap.getPixels()))
+            chemicalTexture.draw(chemicalPixmap, 0, 0);
 
         batch.enableBlending();
         batch.setProjectionMatrix(camera.combined);
@@ -75,7 +72,6 @@ public class ChemicalsRenderer implements Renderer {
 
     @Override
     public void dispose() {
-        chemicalSolution.setUpdateChemicalCallback(null);
         chemicalTexture.dispose();
         batch.dispose();
         chemicalPixmap.dispose();
@@ -189,7 +189,7 @@ public class EnvironmentRenderer implements Renderer {
         debugRenderer.setColor(Color.GOLD);
         debugRenderer.set(ShapeRenderer.ShapeType.Line);
 
-        SpatialHash<Cell> spatialHash = environment.getSpatialHash(Protozoan.class);
+        UniformGrid<Cell> spatialHash = environment.getSpatialHash(Protozoan.class);
         float size = spatialHash.getChunkSize();
         for (int i = 0; i < spatialHash.getResolution(); i++) {
             float x = spatialHash.getOriginX() + i * size;
@@ -7,7 +7,6 @@ import com.badlogic.gdx.math.Vector2;
 import com.protoevo.biology.cells.Cell;
 import com.protoevo.biology.nodes.Photoreceptor;
 import com.protoevo.biology.nodes.SurfaceNode;
-import com.protoevo.maths.Shape;
 import com.protoevo.utils.ImageUtils;
 
 public class PhotoreceptorRenderer extends NodeRenderer {
@@ -53,21 +52,6 @@ public class PhotoreceptorRenderer extends NodeRenderer {
         }
     }
 
-    private void renderDebugRay(ShapeRenderer sr, Vector2[] ray, Photoreceptor attachment) {
-        Cell cell = node.getCell();
-        sr.line(ray[0], ray[1]);
-        for (Object o : cell.getInteractionQueue()) {
-            if (o instanceof Shape) {
-                Shape.Intersection[] intersections = attachment.computeIntersections((Shape) o);
-                for (Shape.Intersection intersection : intersections) {
-                    if (intersection.didCollide)
-                        sr.circle(intersection.point.x, intersection.point.y,
-                                cell.getRadius() / 15f, 15);
-                }
-            }
-        }
-    }
-
     @Override
     public void renderDebug(ShapeRenderer sr) {
         if (node.getAttachment() == null)
@@ -79,7 +63,12 @@ public class PhotoreceptorRenderer extends NodeRenderer {
         attachment.reset();
         for (int rayIdx = 0; rayIdx < attachment.getNRays(); rayIdx++) {
             Vector2[] ray = attachment.nextRay();
-            renderDebugRay(sr, ray, attachment);
+            sr.line(ray[0], ray[1]);
         }
+
+        // the hits found by the cell's ray caster when the rays were last cast
+        Cell cell = node.getCell();
+        for (int i = 0; i < attachment.getNRayHits(); i++)
+            sr.circle(attachment.getRayHitX(i), attachment.getRayHitY(i), cell.getRadius() / 15f, 15);
     }
 }
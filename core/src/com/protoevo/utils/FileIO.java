@@ -31,6 +31,13 @@ public class FileIO
 		return Paths.get("saved-cells");
 	}
 
+	public static Path getCacheDir() {
+		if (System.getProperty("os.name").toLowerCase().contains("win")) {
+			return Paths.get(System.getenv("APPDATA") + "/ProtoEvo/cache");
+		}
+		return Paths.get("cache");
+	}
+
 	public static ObjectMapper getJsonMapper() {
 		ObjectMapper mapper = JsonMapper.builder()
 				.enable(MapperFeature.PROPAGATE_TRANSIENT_MARKER)